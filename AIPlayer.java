@@ -1,354 +1,1061 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
-public class AIPlayer {
+public class AIPlayer implements GameEngine.Listener {
+    public enum Strategy {
+        BEAM,   // beam search over the preview scored by the static evaluation
+        ROLLOUT // top static candidates rescored by Monte Carlo rollouts
+    }
+    
+    // Shared by every AI player; the calling thread also takes part in each evaluation
+    private static final ForkJoinPool SEARCH_POOL = ForkJoinPool.commonPool();
+    // Board rows scanned per ply below which splitting costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 16384;
+    private static final int MIN_TASK_PLACEMENTS = 32;
+    // Transposition table entries per player (2^14 entries, 256 KB: stays in cache
+    // and still holds several decisions of a full lookahead search)
+    private static final int TABLE_BITS = 14;
+    // An anytime search may widen the beam up to this multiple of the configured width
+    private static final int MAX_WIDEN = 4;
+    private static final int LATENCY_SAMPLES = 4096;
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+    private static final int DEADLINE_CHECK_MASK = 63; // check the clock every 64 placements
+    private static final int ROLLOUT_CANDIDATES = 4; // first placements the rollouts choose between
+    private static final int CACHE_BITS = 16; // placement cache entries (2^16, 1 MB)
+    private static final int EVAL_BATCH = 64; // boards scored per evaluator call
+    // Per-worker scratch board and features, resized on demand
+    private static final ThreadLocal<Scratch> WORKER_SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    
     private TetrisPanel gamePanel;
-    private Timer aiTimer;
+    private GameEngine engine;
     private Random random;
-    private int[][] board;
+    
+    // Event-driven decisions: each spawned piece queues a snapshot that a shared
+    // pool thread searches; the resulting move is applied on the game thread.
+    private final AtomicReference<DecisionRequest> pendingRequest = new AtomicReference<>();
+    private final AtomicBoolean deciding = new AtomicBoolean(false);
+    private volatile boolean running = false;
+    private boolean useDeadline = false;
+    private final DecisionRequest headlessRequest;
+    private int[] board; // bitboard row masks
+    private int[] preview = new int[0];
+    private int previewCount;
     private int boardWidth;
     private int boardHeight;
+    private int fullMask;
+    private MoveGenerator moveGenerator;
+    private Scratch scratch = new Scratch();
+    private TranspositionTable table;
+    private Strategy strategy = Strategy.BEAM;
+    private RolloutEvaluator rolloutEvaluator; // created on first rollout decision
+    private double[] rolloutScores = new double[ROLLOUT_CANDIDATES];
+    private int rollouts;
+    private int rolloutDepth;
+    private boolean cacheEnabled;
+    private PlacementCache placementCache; // null unless enabled in GameConfig
+    private PerfectClearSolver perfectClear; // null unless enabled
+    private long perfectClearBudget; // ns per perfect-clear search
+    private int[] perfectClearPieces = new int[0];
+    private int planStep; // next placement of the perfect-clear line being followed
+    private long perfectClearMoves; // decisions taken from a perfect-clear line
+    private DecisionRecorder recorder; // null unless aiRecordFile is set
+    private int[] recordRows;  // board before the placement being logged
+    private int[] recordAfter; // and after it
+    private BoardFeatures recordFeatures;
+    
+    // Evaluation: lines are weighted here, the board position by the evaluator
+    private AIWeights weights;
+    private int weightLines;
+    private BoardEvaluator evaluator;
+    private boolean customEvaluator; // set by setEvaluator, kept across setWeights
+    
+    // Beam search settings
+    private int lookahead;  // preview pieces searched beyond the current one
+    private int beamWidth;  // boards kept after each ply
+    private int maxBeamWidth; // widest beam an anytime search widens to
+    private int beamLimit;  // width of the search in progress
+    private int nodeBudget; // placements evaluated per decision before search stops early
+    
+    // Beam generations, swapped after each ply
+    private int[][] beamBoards;
+    private BoardFeatures[] beamFeatures;
+    private long[] beamHash;     // Zobrist hash of the board
+    private int[] beamLines;     // lines cleared along the path
+    private int[] beamFirstMove; // encoded placement of the current piece that leads here
+    private int beamSize;
+    private int[][] nextBoards;
+    private BoardFeatures[] nextFeatures;
+    private long[] nextHash;
+    private int[] nextLines;
+    private int[] nextFirstMove;
+    
+    // Placements of the current ply in enumeration order; scored serially or in parallel
+    private int[] plParent;
+    private int[] plRotation;
+    private int[] plRow;
+    private int[] plCol;
+    private int[] plScore;
+    private int[] plLines;
+    private long[] plHash;
+    private boolean[] plCached; // score came from the transposition table
+    private int placementCount;
+    private int plyType;
+    private int plyBaseRotation;
+    private long plyDeadline = NO_DEADLINE;
+    private volatile boolean timedOut; // set by any evaluating thread once past plyDeadline
+    
+    // Candidates for the next generation, kept sorted best first
+    private int[] candScore;
+    private int[] candParent;
+    private int[] candRotation;
+    private int[] candRow;
+    private int[] candCol;
+    private int[] candLines;
+    private long[] candHash;
+    private int candCount;
+    private int nodes;
+    
+    // Search statistics
+    private long decisions;
+    private long totalNodes;
+    private long totalSearchNanos;
+    private long totalDepth;
+    private long totalWidth;
+    private int lastNodes;
+    private int lastDepth;
+    private long[] depthCounts; // decisions by plies completed
+    private long totalRollouts;
+    private long cachedDecisions; // decisions answered by the placement cache
+    private long missedLocks;   // decisions that arrived after their piece had locked
+    private final int[] latencyMicros = new int[LATENCY_SAMPLES]; // spawn to commit, most recent
+    private long latencyCount;
     
     public AIPlayer(TetrisPanel gamePanel) {
+        this(gamePanel.getEngine());
         this.gamePanel = gamePanel;
+    }
+    
+    // Headless player driving the engine directly
+    public AIPlayer(GameEngine engine) {
+        this.engine = engine;
         this.random = new Random();
-        updateBoardDimensions();
+        this.boardWidth = engine.getBoardWidth();
+        this.boardHeight = engine.getBoardHeight();
+        this.fullMask = BitBoard.fullMask(boardWidth);
+        this.board = new int[boardHeight];
+        this.moveGenerator = new MoveGenerator(boardWidth, boardHeight);
+        scratch.resize(boardWidth, boardHeight);
+        this.headlessRequest = new DecisionRequest(boardHeight, engine.getPreviewSize());
+        
+        setWeights(AIWeights.getDefault()); // also creates the transposition table
+        LearnedEvaluator learned = LearnedEvaluator.getDefault();
+        if (learned != null) {
+            setEvaluator(learned);
+        }
+        GameConfig config = GameConfig.getInstance();
+        setSearchLimits(config.getAiLookahead(), config.getAiBeamWidth(), config.getAiNodeBudget());
+        rollouts = config.getAiRollouts();
+        rolloutDepth = config.getAiRolloutDepth();
+        cacheEnabled = config.isAiPlacementCache();
+        updatePlacementCache();
+        setPerfectClear(config.isAiPerfectClear());
+        if (!config.getAiRecordFile().isEmpty()) {
+            setRecorder(DecisionRecorder.shared(config.getAiRecordFile(), boardWidth, boardHeight));
+        }
+    }
+    
+    // The cache is only valid for one lookahead and evaluation
+    private void updatePlacementCache() {
+        if (!cacheEnabled) return;
+        GameConfig config = GameConfig.getInstance();
+        long evaluationHash = evaluator.fingerprint() * 31 + weightLines;
+        placementCache = PlacementCache.shared(boardWidth, 1 + lookahead, evaluationHash, CACHE_BITS,
+                config.getAiPlacementCacheFile());
+    }
+    
+    public void setSearchLimits(int lookahead, int beamWidth, int nodeBudget) {
+        this.lookahead = Math.max(0, lookahead);
+        this.beamWidth = Math.max(1, beamWidth);
+        this.nodeBudget = Math.max(1, nodeBudget);
+        this.maxBeamWidth = this.beamWidth * MAX_WIDEN;
+        this.depthCounts = new long[this.lookahead + 2];
+        int slots = maxBeamWidth;
+        
+        beamBoards = new int[slots][boardHeight];
+        beamLines = new int[slots];
+        beamHash = new long[slots];
+        nextHash = new long[slots];
+        beamFirstMove = new int[slots];
+        nextBoards = new int[slots][boardHeight];
+        beamFeatures = new BoardFeatures[slots];
+        nextFeatures = new BoardFeatures[slots];
+        for (int i = 0; i < slots; i++) {
+            beamFeatures[i] = new BoardFeatures(boardWidth, boardHeight);
+            nextFeatures[i] = new BoardFeatures(boardWidth, boardHeight);
+        }
+        nextLines = new int[slots];
+        nextFirstMove = new int[slots];
+        candScore = new int[slots];
+        candParent = new int[slots];
+        candRotation = new int[slots];
+        candRow = new int[slots];
+        candCol = new int[slots];
+        candLines = new int[slots];
+        candHash = new long[slots];
+        
+        // Enough for straight drops; tucks and spins grow it on demand
+        int maxPlacements = this.beamWidth * 4 * boardWidth;
+        plParent = new int[maxPlacements];
+        plRotation = new int[maxPlacements];
+        plRow = new int[maxPlacements];
+        plCol = new int[maxPlacements];
+        plScore = new int[maxPlacements];
+        plLines = new int[maxPlacements];
+        plHash = new long[maxPlacements];
+        plCached = new boolean[maxPlacements];
+        updatePlacementCache();
+    }
+    
+    private void ensurePlacementCapacity(int capacity) {
+        if (capacity <= plParent.length) return;
+        int size = Math.max(capacity, plParent.length * 2);
+        plParent = Arrays.copyOf(plParent, size);
+        plRotation = Arrays.copyOf(plRotation, size);
+        plRow = Arrays.copyOf(plRow, size);
+        plCol = Arrays.copyOf(plCol, size);
+        plScore = Arrays.copyOf(plScore, size);
+        plLines = Arrays.copyOf(plLines, size);
+        plHash = Arrays.copyOf(plHash, size);
+        plCached = Arrays.copyOf(plCached, size);
+    }
+    
+    // Cached scores depend on the weights, so changing them starts a fresh table.
+    // The position weights only apply while no custom evaluator is set.
+    public void setWeights(AIWeights weights) {
+        this.weights = weights;
+        weightLines = weights.get(AIWeights.LINES);
+        if (!customEvaluator) {
+            evaluator = new LinearEvaluator(weights);
+        }
+        evaluationChanged();
+    }
+    
+    // Scores positions with the given evaluator instead of the weights; null goes
+    // back to the weights
+    public void setEvaluator(BoardEvaluator evaluator) {
+        customEvaluator = evaluator != null;
+        this.evaluator = customEvaluator ? evaluator : new LinearEvaluator(weights);
+        evaluationChanged();
     }
     
-    private void updateBoardDimensions() {
-        this.boardWidth = gamePanel.getBoardWidth();
-        this.boardHeight = gamePanel.getBoardHeight();
-        this.board = new int[boardHeight][boardWidth];
+    public BoardEvaluator getEvaluator() {
+        return evaluator;
+    }
+    
+    private void evaluationChanged() {
+        table = new TranspositionTable(boardWidth, boardHeight, TABLE_BITS);
+        rolloutEvaluator = null;
+        updatePlacementCache();
+    }
+    
+    // Looks for perfect clears on low boards before the regular search
+    public void setPerfectClear(boolean enabled) {
+        GameConfig config = GameConfig.getInstance();
+        perfectClear = enabled ? new PerfectClearSolver(boardWidth, boardHeight, config.getAiPerfectClearRows()) : null;
+        perfectClearBudget = config.getAiPerfectClearBudget() * 1_000_000L;
+        planStep = 0;
+    }
+    
+    // Logs every placement this player makes; null stops logging
+    public void setRecorder(DecisionRecorder recorder) {
+        this.recorder = recorder;
+        if (recorder != null && recordRows == null) {
+            recordRows = new int[boardHeight];
+            recordAfter = new int[boardHeight];
+            recordFeatures = new BoardFeatures(boardWidth, boardHeight);
+        }
+    }
+    
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+    
+    public Strategy getStrategy() {
+        return strategy;
+    }
+    
+    public AIWeights getWeights() {
+        return weights;
     }
     
     public void startAI() {
-        aiTimer = new Timer();
-        aiTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                if (gamePanel != null && !gamePanel.isGameOver() && !gamePanel.isPaused()) {
-                    makeIntelligentMove();
+        running = true;
+        engine.addListener(this);
+        // Pick up a piece that spawned before we were listening
+        requestDecision();
+    }
+    
+    public void stopAI() {
+        running = false;
+        engine.removeListener(this);
+        pendingRequest.set(null);
+        if (placementCache != null) {
+            placementCache.flush();
+        }
+        if (decisions > 0) {
+            System.out.println("AI search: " + getSearchStats());
+        }
+    }
+    
+    @Override
+    public void pieceSpawned(Tetromino piece) {
+        requestDecision();
+    }
+    
+    // Called on the game thread after a pause ends; moves dropped while paused are redone
+    public void gameResumed() {
+        requestDecision();
+    }
+    
+    // Snapshots the game on the game thread and hands the search to the shared pool
+    private void requestDecision() {
+        if (!running || engine.isGameOver() || engine.getCurrentTetromino() == null) return;
+        
+        DecisionRequest request = new DecisionRequest(boardHeight, engine.getPreviewSize());
+        request.capture(engine);
+        request.deadline = deadlineFrom(request.captured);
+        pendingRequest.set(request); // a newer piece supersedes one not yet searched
+        if (deciding.compareAndSet(false, true)) {
+            SEARCH_POOL.execute(this::drainDecisions);
+        }
+    }
+    
+    // Runs on a pool thread; one search at a time per player
+    private void drainDecisions() {
+        while (true) {
+            DecisionRequest request = pendingRequest.getAndSet(null);
+            if (request == null) {
+                deciding.set(false);
+                // A request may have arrived between the empty check and the reset
+                if (pendingRequest.get() == null || !deciding.compareAndSet(false, true)) {
+                    return;
                 }
+                continue;
+            }
+            Move move = findBestMove(request);
+            if (gamePanel != null) {
+                gamePanel.runOnGameThread(() -> applyDecision(request, move));
             }
-        }, 1000, 300); // Start after 1 second, then make a move every 300ms
+        }
     }
     
-    public void stopAI() {
-        if (aiTimer != null) {
-            aiTimer.cancel();
+    // Game thread: apply the move only if it is still for the piece in play
+    private void applyDecision(DecisionRequest request, Move move) {
+        if (!running || engine.isGameOver() || gamePanel.isPaused()) return;
+        if (engine.getPiecesPlaced() != request.sequence) {
+            missedLocks++;
+            return;
         }
+        executeMove(move);
+        recordLatency(System.nanoTime() - request.captured);
+    }
+    
+    // Commit the move before the first gravity step, less a margin for the hand-off
+    // to the game thread. Headless play only has a deadline if asked for one.
+    private long deadlineFrom(long captured) {
+        if (gamePanel == null && !useDeadline) return NO_DEADLINE;
+        int interval = engine.getDropInterval();
+        int budget = Math.max(interval / 2, interval - GameConfig.getInstance().getAiDeadlineMargin());
+        return captured + budget * 1_000_000L;
+    }
+    
+    // Makes headless decisions run under the same deadline as on screen
+    public void setUseDeadline(boolean useDeadline) {
+        this.useDeadline = useDeadline;
+    }
+    
+    private synchronized void recordLatency(long nanos) {
+        latencyMicros[(int) (latencyCount++ % LATENCY_SAMPLES)] = (int) Math.min(Integer.MAX_VALUE, nanos / 1000);
+    }
+    
+    // Spawn-to-commit latency percentile (0-100) over the recent decisions, in ms
+    public synchronized double getLatencyPercentile(double percentile) {
+        int n = (int) Math.min(latencyCount, LATENCY_SAMPLES);
+        if (n == 0) return 0;
+        int[] sorted = Arrays.copyOf(latencyMicros, n);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100 * n) - 1;
+        return sorted[Math.max(0, Math.min(n - 1, index))] / 1000.0;
+    }
+    
+    public long getMissedLocks() {
+        return missedLocks;
+    }
+    
+    // Decisions that completed the given number of plies
+    public long getDepthCount(int depth) {
+        return depth < depthCounts.length ? depthCounts[depth] : 0;
     }
     
     private void makeIntelligentMove() {
-        if (gamePanel.getCurrentTetromino() == null) return;
+        if (engine.getCurrentTetromino() == null) return;
         
-        // Update board dimensions in case they changed
-        updateBoardDimensions();
-        
-        // Get current board state
-        updateBoardState();
+        // Get current game state
+        headlessRequest.capture(engine);
+        headlessRequest.deadline = deadlineFrom(headlessRequest.captured);
         
         // Find the best move
-        Move bestMove = findBestMove();
+        Move bestMove = findBestMove(headlessRequest);
         
         // Execute the best move
         executeMove(bestMove);
+        recordLatency(System.nanoTime() - headlessRequest.captured);
     }
     
-    private void updateBoardState() {
-        // Get the current board state from TetrisPanel
-        int[][] currentBoard = gamePanel.getBoard();
-        if (currentBoard != null) {
-            for (int r = 0; r < boardHeight; r++) {
-                System.arraycopy(currentBoard[r], 0, board[r], 0, boardWidth);
-            }
+    // Headless play: decide, move and lock one piece. Returns false once the game is over.
+    public boolean playPiece() {
+        if (engine.isGameOver()) return false;
+        int placed = engine.getPiecesPlaced();
+        makeIntelligentMove();
+        while (!engine.isGameOver() && engine.getPiecesPlaced() == placed) {
+            // Placement normally locks at once; otherwise let gravity finish it
+            engine.step();
+        }
+        return !engine.isGameOver();
+    }
+    
+    // Copies the request into the search's working state
+    private void loadRequest(DecisionRequest request) {
+        System.arraycopy(request.rows, 0, board, 0, boardHeight);
+        if (preview.length < request.previewCount) {
+            preview = new int[request.previewCount];
         }
+        System.arraycopy(request.preview, 0, preview, 0, request.previewCount);
+        previewCount = request.previewCount;
     }
     
-    private Move findBestMove() {
-        Tetromino current = gamePanel.getCurrentTetromino();
-        if (current == null) return new Move(MoveType.DROP, 0);
+    // Picks the placement for the current piece. Without a deadline this is one
+    // full-depth beam search. With one the search is anytime: it deepens one ply
+    // at a time up to the full lookahead, then widens the beam, and returns the
+    // result of the last iteration that finished before the deadline.
+    private Move findBestMove(DecisionRequest request) {
+        loadRequest(request);
+        
+        if (perfectClear != null) {
+            Move move = perfectClearMove(request);
+            if (move != null) return move;
+        }
         
-        Move bestMove = new Move(MoveType.DROP, Integer.MIN_VALUE);
+        if (strategy == Strategy.ROLLOUT) {
+            return findRolloutMove(request);
+        }
         
-        // Try all possible rotations
-        for (int rotation = 0; rotation < 4; rotation++) {
-            int[][] shape = current.shape;
-            for (int r = 0; r < rotation; r++) {
-                shape = rotateShape(shape);
+        long cacheKey = 0;
+        if (placementCache != null) {
+            cacheKey = placementKey(request);
+            int cached = cacheKey != 0 ? placementCache.lookup(cacheKey) : -1;
+            Move move = cached >= 0 ? cachedMove(request, cached) : null;
+            if (move != null) {
+                cachedDecisions++;
+                return move;
             }
-            
-            // Try all possible horizontal positions
-            for (int col = 0; col < boardWidth; col++) {
-                int dropRow = findDropRow(shape, col);
-                if (dropRow >= 0) {
-                    int score = evaluateMove(shape, dropRow, col);
-                    if (score > bestMove.score) {
-                        bestMove = new Move(MoveType.DROP, score);
-                        bestMove.targetCol = col;
-                        bestMove.targetRow = dropRow;
-                        bestMove.rotations = rotation;
-                    }
-                }
+        }
+        
+        long start = System.nanoTime();
+        int searched = 0;
+        table.newSearch();
+        
+        int maxPlies = 1 + Math.min(lookahead, previewCount);
+        int depth = 0;
+        int width = 0;
+        int bestFirst = 0;
+        int bestScore = Integer.MIN_VALUE;
+        int plies = request.deadline == NO_DEADLINE ? maxPlies : 1;
+        int beam = beamWidth;
+        while (true) {
+            int reached = search(request, plies, beam, request.deadline);
+            searched += nodes;
+            if (reached < 0) break; // out of time; keep the previous iteration's move
+            depth = reached;
+            width = beam;
+            if (reached > 0) {
+                bestFirst = beamFirstMove[0];
+                bestScore = candScore[0];
+            }
+            if (request.deadline == NO_DEADLINE || reached < plies || System.nanoTime() >= request.deadline) break;
+            if (plies < maxPlies) {
+                plies++;
+            } else if (beam * 2 <= maxBeamWidth) {
+                beam *= 2;
+            } else {
+                break;
             }
         }
         
+        long elapsed = System.nanoTime() - start;
+        decisions++;
+        totalNodes += searched;
+        totalSearchNanos += elapsed;
+        totalDepth += depth;
+        totalWidth += width;
+        lastNodes = searched;
+        lastDepth = depth;
+        depthCounts[Math.min(depth, depthCounts.length - 1)]++;
+        
+        if (depth == 0) return new Move(MoveType.DROP, Integer.MIN_VALUE);
+        if (cacheKey != 0 && depth == maxPlies) {
+            placementCache.store(cacheKey, ((bestFirst >>> 16) << 8) | (bestFirst & 0xFF));
+        }
+        
+        Move bestMove = new Move(MoveType.DROP, bestScore);
+        bestMove.rotations = bestFirst >>> 16;
+        bestMove.targetRow = (bestFirst >>> 8) & 0xFF;
+        bestMove.targetCol = bestFirst & 0xFF;
         return bestMove;
     }
     
-    private int[][] rotateShape(int[][] shape) {
-        int rows = shape.length;
-        int cols = shape[0].length;
-        int[][] rotated = new int[cols][rows];
-        for (int r = 0; r < rows; r++) {
-            for (int c = 0; c < cols; c++) {
-                rotated[c][rows - 1 - r] = shape[r][c];
+    // Next placement of a perfect-clear line: the one being followed if the game
+    // is still on it, otherwise a new one searched from this piece. Returns null
+    // when there is none, and the regular search decides.
+    private Move perfectClearMove(DecisionRequest request) {
+        int step = planStep;
+        boolean onPlan = perfectClear.expects(step, board) && perfectClear.getType(step) == request.type
+                && moveGenerator.generate(board, request.type, request.rotation, request.row, request.col) > 0
+                && moveGenerator.find(request.type, perfectClear.getRotation(step),
+                        perfectClear.getRow(step), perfectClear.getCol(step)) >= 0;
+        if (!onPlan) {
+            step = 0;
+            planStep = 0;
+            int count = 1 + previewCount;
+            if (perfectClearPieces.length < count) {
+                perfectClearPieces = new int[count];
+            }
+            perfectClearPieces[0] = request.type;
+            System.arraycopy(preview, 0, perfectClearPieces, 1, previewCount);
+            long deadline = Math.min(request.deadline, System.nanoTime() + perfectClearBudget);
+            if (perfectClear.solve(board, perfectClearPieces, count, request.rotation, request.row, request.col, deadline) == 0) {
+                return null;
             }
         }
-        return rotated;
+        planStep = step + 1;
+        perfectClearMoves++;
+        Move move = new Move(MoveType.DROP, 0);
+        move.rotations = (perfectClear.getRotation(step) - request.rotation) & 3;
+        move.targetRow = perfectClear.getRow(step);
+        move.targetCol = perfectClear.getCol(step);
+        return move;
     }
     
-    private int findDropRow(int[][] shape, int col) {
-        int startRow = 0;
-        for (int row = startRow; row < boardHeight; row++) {
-            if (!canPlace(shape, row, col)) {
-                return row - 1;
+    // Monte Carlo decision: the best ROLLOUT_CANDIDATES placements of the current
+    // piece by the static evaluation, each rescored by rollouts from its board.
+    // The rollouts share the decision's deadline.
+    private Move findRolloutMove(DecisionRequest request) {
+        long start = System.nanoTime();
+        table.newSearch();
+        int reached = search(request, 1, Math.min(ROLLOUT_CANDIDATES, maxBeamWidth), NO_DEADLINE);
+        int count = beamSize;
+        int finished = 0;
+        int best = 0;
+        if (reached > 0) {
+            if (rolloutEvaluator == null) {
+                rolloutEvaluator = new RolloutEvaluator(boardWidth, boardHeight, engine.isExtendedMode(),
+                        evaluator, weightLines);
             }
-        }
-        return boardHeight - 1;
-    }
-    
-    private boolean canPlace(int[][] shape, int row, int col) {
-        for (int r = 0; r < shape.length; r++) {
-            for (int c = 0; c < shape[0].length; c++) {
-                if (shape[r][c] != 0) {
-                    int br = row + r;
-                    int bc = col + c;
-                    if (br < 0 || br >= boardHeight || bc < 0 || bc >= boardWidth) {
-                        return false;
-                    }
-                    if (br >= 0 && br < boardHeight && bc >= 0 && bc < boardWidth && board[br][bc] != 0) {
-                        return false;
-                    }
+            // Seeded by game and piece so replays make the same choices
+            long seed = engine.getSeed() * 1_000_003L + request.sequence;
+            finished = rolloutEvaluator.evaluate(beamBoards, count, preview, previewCount,
+                    rollouts, rolloutDepth, seed, request.deadline, rolloutScores);
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                double value = (double) beamLines[i] * weightLines + rolloutScores[i];
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
                 }
             }
         }
-        return true;
+        
+        long elapsed = System.nanoTime() - start;
+        decisions++;
+        totalNodes += nodes;
+        totalSearchNanos += elapsed;
+        totalDepth += reached;
+        totalWidth += count;
+        totalRollouts += finished;
+        lastNodes = nodes;
+        lastDepth = reached;
+        depthCounts[Math.min(reached, depthCounts.length - 1)]++;
+        
+        if (reached == 0) return new Move(MoveType.DROP, Integer.MIN_VALUE);
+        
+        int first = beamFirstMove[best];
+        Move move = new Move(MoveType.DROP, (int) rolloutScores[best]);
+        move.rotations = first >>> 16;
+        move.targetRow = (first >>> 8) & 0xFF;
+        move.targetCol = first & 0xFF;
+        return move;
     }
     
-    private int evaluateMove(int[][] shape, int row, int col) {
-        int score = 0;
-        
-        // Simulate placing the piece
-        int[][] tempBoard = new int[boardHeight][boardWidth];
-        for (int r = 0; r < boardHeight; r++) {
-            System.arraycopy(board[r], 0, tempBoard[r], 0, boardWidth);
+    // Cache key for the request's board, or 0 when holes or a tall stack make the
+    // surface profile a poor stand-in for the board
+    private long placementKey(DecisionRequest request) {
+        BoardFeatures features = scratch.features;
+        features.compute(board);
+        long key = 0;
+        if (features.getHoles() == 0 && features.getMaxHeight() * 2 <= boardHeight) {
+            key = placementCache.key(features, request.type, preview, Math.min(previewCount, lookahead));
         }
-        
-        // Place the piece
-        for (int r = 0; r < shape.length; r++) {
-            for (int c = 0; c < shape[0].length; c++) {
-                if (shape[r][c] != 0) {
-                    int br = row + r;
-                    int bc = col + c;
-                    if (br >= 0 && br < boardHeight && bc >= 0 && bc < boardWidth) {
-                        tempBoard[br][bc] = 1; // Use 1 to represent placed piece
-                    }
-                }
-            }
+        if (key == 0) {
+            placementCache.recordSkip();
         }
-        
-        // Clear lines in simulation
-        int linesCleared = clearLines(tempBoard);
-        
-        // Score based on line clears (highest priority)
-        score += linesCleared * 10000;
-        
-        // Score based on board state
-        score += evaluateBoard(tempBoard);
-        
-        // Prefer moves that don't create holes
-        score += countHoles(tempBoard) * -200;
-        
-        // Prefer moves that keep the board low
-        score += getHighestBlock(tempBoard) * -50;
-        
-        // Prefer moves that create flat surfaces
-        score += getSurfaceRoughness(tempBoard) * -20;
-        
-        // Prefer moves that fill gaps
-        score += countGaps(tempBoard) * -100;
-        
-        // Prefer moves that create potential for future line clears
-        score += countPotentialLineClears(tempBoard) * 500;
-        
-        return score;
+        return key;
     }
     
-    private int evaluateBoard(int[][] board) {
-        int score = 0;
-        
-        // Count holes
-        score += countHoles(board) * -100;
-        
-        // Count height
-        score += getHighestBlock(board) * -10;
-        
-        // Count surface roughness
-        score += getSurfaceRoughness(board) * -5;
-        
-        return score;
-    }
-    
-    private int countHoles(int[][] board) {
-        int holes = 0;
-        for (int col = 0; col < boardWidth; col++) {
-            boolean foundBlock = false;
-            for (int row = 0; row < boardHeight; row++) {
-                if (board[row][col] != 0) {
-                    foundBlock = true;
-                } else if (foundBlock) {
-                    holes++;
-                }
+    // A cached (rotations << 8 | column) as a move, if the straight rotate, shift and
+    // drop path to it is open from where the piece is now; null otherwise
+    private Move cachedMove(DecisionRequest request, int cached) {
+        int rotation = request.rotation;
+        int row = request.row;
+        int col = request.col;
+        int rotations = cached >>> 8;
+        int targetCol = cached & 0xFF;
+        for (int i = 0; i < rotations; i++) {
+            rotation = Tetromino.nextRotation(rotation);
+            if (!BitBoard.fits(board, boardWidth, boardHeight, Tetromino.masks(request.type, rotation), row, col)) {
+                return null;
+            }
+        }
+        int[] masks = Tetromino.masks(request.type, rotation);
+        int step = targetCol > col ? 1 : -1;
+        while (col != targetCol) {
+            col += step;
+            if (!BitBoard.fits(board, boardWidth, boardHeight, masks, row, col)) {
+                return null;
             }
         }
-        return holes;
+        while (BitBoard.fits(board, boardWidth, boardHeight, masks, row + 1, col)) {
+            row++;
+        }
+        Move move = new Move(MoveType.DROP, 0);
+        move.rotations = rotations;
+        move.targetRow = row;
+        move.targetCol = col;
+        return move;
     }
     
-    private int getHighestBlock(int[][] board) {
-        for (int row = 0; row < boardHeight; row++) {
-            for (int col = 0; col < boardWidth; col++) {
-                if (board[row][col] != 0) {
-                    return boardHeight - row;
+    // Beam search over the current piece and plies - 1 preview pieces, keeping the
+    // best `beam` boards after each ply. Returns the plies completed (fewer if a
+    // preview piece has nowhere to go), or -1 if the deadline passed first. The
+    // current piece's ply always completes, so there is always a move.
+    private int search(DecisionRequest request, int plies, int beam, long deadline) {
+        nodes = 0;
+        beamLimit = beam;
+        System.arraycopy(board, 0, beamBoards[0], 0, boardHeight);
+        beamFeatures[0].compute(board);
+        beamHash[0] = table.hashBoard(board, boardHeight);
+        beamLines[0] = 0;
+        beamFirstMove[0] = 0;
+        beamSize = 1;
+        
+        int depth = 0;
+        for (int ply = 0; ply < plies; ply++) {
+            int type = ply == 0 ? request.type : preview[ply - 1];
+            int baseRotation = ply == 0 ? request.rotation : 0;
+            // Preview pieces start where they will spawn
+            int startRow = ply == 0 ? request.row : 0;
+            int startCol = ply == 0 ? request.col : Tetromino.spawnColumn(type, boardWidth);
+            
+            plyType = type;
+            plyBaseRotation = baseRotation;
+            placementCount = 0;
+            for (int parent = 0; parent < beamSize; parent++) {
+                // The current piece is always searched fully; deeper plies stop at the budget
+                if (ply > 0 && nodes + placementCount >= nodeBudget) break;
+                if (ply > 0 && deadline != NO_DEADLINE && System.nanoTime() >= deadline) return -1;
+                enumeratePlacements(parent, type, baseRotation, startRow, startCol);
+            }
+            if (placementCount == 0) break;
+            
+            plyDeadline = ply > 0 ? deadline : NO_DEADLINE;
+            timedOut = false;
+            evaluatePlacements();
+            if (timedOut) return -1;
+            nodes += placementCount;
+            
+            // Merge in enumeration order so parallel and serial runs pick the same moves
+            candCount = 0;
+            int hits = 0;
+            for (int i = 0; i < placementCount; i++) {
+                if ((i & DEADLINE_CHECK_MASK) == 0 && plyDeadline != NO_DEADLINE && System.nanoTime() >= plyDeadline) {
+                    return -1;
                 }
+                if (plCached[i]) hits++;
+                offerCandidate(plScore[i], plParent[i], plRotation[i], plRow[i], plCol[i], plLines[i], plHash[i]);
             }
+            table.recordStats(placementCount, hits, placementCount - hits);
+            
+            advanceBeam(ply, type, baseRotation);
+            depth = ply + 1;
         }
-        return 0;
+        return depth;
     }
     
-    private int getSurfaceRoughness(int[][] board) {
-        int roughness = 0;
-        for (int col = 0; col < boardWidth - 1; col++) {
-            int height1 = getColumnHeight(board, col);
-            int height2 = getColumnHeight(board, col + 1);
-            roughness += Math.abs(height1 - height2);
+    // Lists every placement the piece can reach on one beam board, tucks and spins included
+    private void enumeratePlacements(int parent, int type, int baseRotation, int startRow, int startCol) {
+        int found = moveGenerator.generate(beamBoards[parent], type, baseRotation, startRow, startCol);
+        ensurePlacementCapacity(placementCount + found);
+        for (int i = 0; i < found; i++) {
+            // Rotations are kept relative to the piece's starting one
+            plParent[placementCount] = parent;
+            plRotation[placementCount] = (moveGenerator.getRotation(i) - baseRotation) & 3;
+            plRow[placementCount] = moveGenerator.getRow(i);
+            plCol[placementCount] = moveGenerator.getCol(i);
+            placementCount++;
         }
-        return roughness;
     }
     
-    private int getColumnHeight(int[][] board, int col) {
-        for (int row = 0; row < boardHeight; row++) {
-            if (board[row][col] != 0) {
-                return boardHeight - row;
-            }
+    private void evaluatePlacements() {
+        if ((long) placementCount * boardHeight < PARALLEL_THRESHOLD || SEARCH_POOL.getParallelism() < 2) {
+            evaluateRange(0, placementCount, scratch);
+        } else {
+            SEARCH_POOL.invoke(new EvaluateTask(0, placementCount));
         }
-        return 0;
     }
     
-    private int clearLines(int[][] board) {
-        int linesCleared = 0;
-        for (int r = boardHeight - 1; r >= 0; r--) {
-            boolean full = true;
-            for (int c = 0; c < boardWidth; c++) {
-                if (board[r][c] == 0) {
-                    full = false;
-                    break;
-                }
+    // Scores placements [from, to) of the current ply using the given scratch space.
+    // Boards already in the transposition table skip the copy and feature update;
+    // the rest are queued and scored by the evaluator EVAL_BATCH at a time.
+    private void evaluateRange(int from, int to, Scratch scratch) {
+        scratch.batchCount = 0;
+        for (int i = from; i < to; i++) {
+            if ((i & DEADLINE_CHECK_MASK) == 0 && plyDeadline != NO_DEADLINE
+                    && (timedOut || System.nanoTime() >= plyDeadline)) {
+                timedOut = true;
+                return;
             }
-            if (full) {
-                linesCleared++;
-                // Remove the line
-                for (int rr = r; rr > 0; rr--) {
-                    System.arraycopy(board[rr - 1], 0, board[rr], 0, boardWidth);
+            int parent = plParent[i];
+            int rotation = (plyBaseRotation + plRotation[i]) & 3;
+            int[] masks = Tetromino.masks(plyType, rotation);
+            int row = plRow[i];
+            int col = plCol[i];
+            
+            int lines = countFullRows(beamBoards[parent], masks, row, col);
+            boolean placed = false;
+            long hash;
+            if (lines == 0) {
+                hash = beamHash[parent] ^ table.hashPiece(masks, row, col);
+            } else {
+                // Cleared lines move every row, so hash the resulting board
+                placeOnto(scratch.board, scratch.features, parent, plyType, rotation, row, col);
+                placed = true;
+                hash = table.hashBoard(scratch.board, boardHeight);
+            }
+            long key = table.key(hash, plyType);
+            
+            plHash[i] = hash;
+            plLines[i] = lines;
+            plCached[i] = table.probe(key, scratch.probeResult);
+            if (plCached[i]) {
+                plScore[i] = evaluateMove(scratch.probeResult[0], beamLines[parent] + lines);
+            } else {
+                if (!placed) {
+                    placeOnto(scratch.board, scratch.features, parent, plyType, rotation, row, col);
+                }
+                int slot = scratch.batchCount++;
+                BoardEvaluator.writeFeatures(scratch.features, scratch.batchFeatures, EVAL_BATCH, slot);
+                scratch.batchIndex[slot] = i;
+                scratch.batchKeys[slot] = key;
+                if (scratch.batchCount == EVAL_BATCH) {
+                    scoreBatch(scratch);
                 }
-                for (int c = 0; c < boardWidth; c++)
-                    board[0][c] = 0;
-                r++; // Check same row again after shift
             }
         }
-        return linesCleared;
+        scoreBatch(scratch);
     }
     
-    private int countLinesCleared(int[][] board) {
-        int linesCleared = 0;
-        for (int row = 0; row < boardHeight; row++) {
-            boolean full = true;
-            for (int col = 0; col < boardWidth; col++) {
-                if (board[row][col] == 0) {
-                    full = false;
-                    break;
-                }
-            }
-            if (full) {
-                linesCleared++;
-            }
+    // Scores the queued boards and fills in their placements' scores
+    private void scoreBatch(Scratch scratch) {
+        int count = scratch.batchCount;
+        if (count == 0) return;
+        evaluator.score(scratch.batchFeatures, EVAL_BATCH, count, scratch.batchScores);
+        for (int b = 0; b < count; b++) {
+            int i = scratch.batchIndex[b];
+            int position = Math.round(scratch.batchScores[b]);
+            table.store(scratch.batchKeys[b], position);
+            plScore[i] = evaluateMove(position, beamLines[plParent[i]] + plLines[i]);
         }
-        return linesCleared;
+        scratch.batchCount = 0;
     }
     
-    private int countGaps(int[][] board) {
-        int gaps = 0;
-        for (int col = 0; col < boardWidth; col++) {
-            int highestBlock = -1;
-            for (int row = 0; row < boardHeight; row++) {
-                if (board[row][col] != 0) {
-                    highestBlock = row;
-                    break;
-                }
+    // Rows a placement would complete, without modifying the board
+    private int countFullRows(int[] parentBoard, int[] masks, int row, int col) {
+        int full = 0;
+        for (int r = 0; r < masks.length; r++) {
+            if ((parentBoard[row + r] | (masks[r] << col)) == fullMask) {
+                full++;
             }
-            if (highestBlock > 0) {
-                for (int row = highestBlock + 1; row < boardHeight; row++) {
-                    if (board[row][col] == 0) {
-                        gaps++;
-                    }
-                }
+        }
+        return full;
+    }
+    
+    // Copies a beam board, drops the piece on it and clears lines, updating the
+    // features from the parent's. Returns the lines cleared.
+    private int placeOnto(int[] tempBoard, BoardFeatures features, int parent, int type, int rotation, int row, int col) {
+        System.arraycopy(beamBoards[parent], 0, tempBoard, 0, boardHeight);
+        BitBoard.place(tempBoard, Tetromino.masks(type, rotation), row, col);
+        int lines = clearLines(tempBoard);
+        features.update(beamFeatures[parent], tempBoard,
+                col, col + Tetromino.width(type, rotation) - 1,
+                row, row + Tetromino.height(type, rotation) - 1, lines);
+        return lines;
+    }
+    
+    private class EvaluateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        
+        EvaluateTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_TASK_PLACEMENTS) {
+                Scratch workerScratch = WORKER_SCRATCH.get();
+                workerScratch.resize(boardWidth, boardHeight);
+                evaluateRange(from, to, workerScratch);
+                return;
             }
+            int mid = (from + to) >>> 1;
+            invokeAll(new EvaluateTask(from, mid), new EvaluateTask(mid, to));
         }
-        return gaps;
     }
     
-    private int countPotentialLineClears(int[][] board) {
-        int potential = 0;
-        for (int row = 0; row < boardHeight; row++) {
-            int filledCells = 0;
-            for (int col = 0; col < boardWidth; col++) {
-                if (board[row][col] != 0) {
-                    filledCells++;
+    // Insertion into the sorted candidate list; ties keep the earlier candidate first.
+    // A board already reached by another path keeps only its best-scoring path.
+    private void offerCandidate(int score, int parent, int rotation, int row, int col, int lines, long hash) {
+        for (int j = 0; j < candCount; j++) {
+            if (candHash[j] == hash) {
+                if (candScore[j] >= score) {
+                    return;
                 }
+                removeCandidate(j);
+                break;
             }
-            if (filledCells >= boardWidth - 2) { // Close to clearing
-                potential += filledCells;
-            }
         }
-        return potential;
+        if (candCount == beamLimit && score <= candScore[candCount - 1]) {
+            return;
+        }
+        int i = candCount < beamLimit ? candCount++ : candCount - 1;
+        while (i > 0 && candScore[i - 1] < score) {
+            candScore[i] = candScore[i - 1];
+            candParent[i] = candParent[i - 1];
+            candRotation[i] = candRotation[i - 1];
+            candRow[i] = candRow[i - 1];
+            candCol[i] = candCol[i - 1];
+            candLines[i] = candLines[i - 1];
+            candHash[i] = candHash[i - 1];
+            i--;
+        }
+        candScore[i] = score;
+        candParent[i] = parent;
+        candRotation[i] = rotation;
+        candRow[i] = row;
+        candCol[i] = col;
+        candLines[i] = lines;
+        candHash[i] = hash;
+    }
+    
+    private void removeCandidate(int index) {
+        for (int i = index; i < candCount - 1; i++) {
+            candScore[i] = candScore[i + 1];
+            candParent[i] = candParent[i + 1];
+            candRotation[i] = candRotation[i + 1];
+            candRow[i] = candRow[i + 1];
+            candCol[i] = candCol[i + 1];
+            candLines[i] = candLines[i + 1];
+            candHash[i] = candHash[i + 1];
+        }
+        candCount--;
+    }
+    
+    // Rebuilds the surviving candidates' boards and makes them the new beam
+    private void advanceBeam(int ply, int type, int baseRotation) {
+        for (int i = 0; i < candCount; i++) {
+            int parent = candParent[i];
+            placeOnto(nextBoards[i], nextFeatures[i], parent, type,
+                    (baseRotation + candRotation[i]) & 3, candRow[i], candCol[i]);
+            nextLines[i] = beamLines[parent] + candLines[i];
+            nextHash[i] = candHash[i];
+            nextFirstMove[i] = ply == 0
+                    ? (candRotation[i] << 16) | (candRow[i] << 8) | candCol[i]
+                    : beamFirstMove[parent];
+        }
+        
+        int[][] boards = beamBoards;
+        beamBoards = nextBoards;
+        nextBoards = boards;
+        BoardFeatures[] features = beamFeatures;
+        beamFeatures = nextFeatures;
+        nextFeatures = features;
+        long[] hashes = beamHash;
+        beamHash = nextHash;
+        nextHash = hashes;
+        int[] lines = beamLines;
+        beamLines = nextLines;
+        nextLines = lines;
+        int[] firstMoves = beamFirstMove;
+        beamFirstMove = nextFirstMove;
+        nextFirstMove = firstMoves;
+        beamSize = candCount;
+    }
+    
+    public long getDecisions() {
+        return decisions;
+    }
+    
+    public int getLastNodes() {
+        return lastNodes;
+    }
+    
+    public int getLastDepth() {
+        return lastDepth;
+    }
+    
+    public double getNodesPerSecond() {
+        return totalSearchNanos == 0 ? 0 : totalNodes * 1e9 / totalSearchNanos;
+    }
+    
+    public TranspositionTable getTranspositionTable() {
+        return table;
     }
     
+    public String getSearchStats() {
+        StringBuilder depths = new StringBuilder();
+        for (int d = 1; d < depthCounts.length; d++) {
+            if (d > 1) depths.append('/');
+            depths.append(depthCounts[d]);
+        }
+        return String.format("%d decisions, %.1f nodes/decision, avg depth %.2f (by depth %s), avg beam %.1f, %.0f nodes/s, "
+                        + "table hit rate %.1f%%, latency p50 %.2f p99 %.2f max %.2f ms, %d missed locks",
+                decisions,
+                decisions == 0 ? 0.0 : (double) totalNodes / decisions,
+                decisions == 0 ? 0.0 : (double) totalDepth / decisions,
+                depths,
+                decisions == 0 ? 0.0 : (double) totalWidth / decisions,
+                getNodesPerSecond(),
+                table.getHitRate() * 100,
+                getLatencyPercentile(50), getLatencyPercentile(99), getLatencyPercentile(100),
+                missedLocks)
+                + (strategy == Strategy.ROLLOUT ? String.format(", %.1f rollouts/decision",
+                        decisions == 0 ? 0.0 : (double) totalRollouts / decisions) : "")
+                + (placementCache == null ? "" : String.format(", %d cached decisions, cache hit rate %.1f%% (%d boards skipped)",
+                        cachedDecisions, placementCache.getHitRate() * 100, placementCache.getSkipped()))
+                + (perfectClear == null ? "" : String.format(", %d perfect clears found in %d searches (%d timed out, %.0f nodes/search), %d moves from them",
+                        perfectClear.getSolutions(), perfectClear.getSolves(), perfectClear.getTimeouts(),
+                        perfectClear.getSolves() == 0 ? 0.0 : (double) perfectClear.getTotalNodes() / perfectClear.getSolves(),
+                        perfectClearMoves));
+    }
+    
+    // Total score of a search path: linesCleared counts every line along it and
+    // position is the evaluator's score of the board it ends on
+    private int evaluateMove(int position, int linesCleared) {
+        // Score based on line clears (highest priority)
+        return linesCleared * weightLines + position;
+    }
+    
+    private int clearLines(int[] board) {
+        return BitBoard.clearFullRows(board, boardHeight, fullMask);
+    }
+    
+    // Runs on the game thread (or the headless caller). The whole placement is
+    // validated and committed in one engine call.
     private void executeMove(Move move) {
         if (move == null) return;
         
-        // Rotate if needed
-        for (int i = 0; i < move.rotations; i++) {
-            gamePanel.rotate();
+        Tetromino current = engine.getCurrentTetromino();
+        if (current == null) return;
+        DecisionRecorder recorder = this.recorder;
+        int linesBefore = 0;
+        if (recorder != null) {
+            engine.getBoard().copyRowsTo(recordRows);
+            linesBefore = engine.getPlayer1Lines() + engine.getPlayer2Lines();
+        }
+        int rotation = (current.rotation + move.rotations) & 3;
+        if (!engine.placePiece(rotation, move.targetRow, move.targetCol)) {
+            // Path blocked; drop where the piece is rather than leave it hanging
+            engine.applyAction(GameEngine.Action.DROP);
         }
+        if (recorder != null && engine.getCurrentTetromino() != current) {
+            // current now holds the spot it locked at
+            int lines = engine.getPlayer1Lines() + engine.getPlayer2Lines() - linesBefore;
+            engine.getBoard().copyRowsTo(recordAfter);
+            recordFeatures.compute(recordAfter);
+            recorder.record(recordRows, current.type, current.rotation, current.row, current.col,
+                    move.score, recordFeatures, lines);
+        }
+    }
+    
+    // Scratch board, features and evaluation batch for one evaluating thread
+    private static class Scratch {
+        int[] board = new int[0];
+        BoardFeatures features;
+        int[] probeResult = new int[1];
+        final float[] batchFeatures = new float[BoardEvaluator.FEATURE_COUNT * EVAL_BATCH];
+        final float[] batchScores = new float[EVAL_BATCH];
+        final int[] batchIndex = new int[EVAL_BATCH];   // placement each queued board belongs to
+        final long[] batchKeys = new long[EVAL_BATCH];  // transposition table key of each
+        int batchCount;
         
-        // Move to target position
-        Tetromino current = gamePanel.getCurrentTetromino();
-        if (current != null) {
-            int currentCol = current.col;
-            int targetCol = move.targetCol;
-            
-            if (currentCol < targetCol) {
-                for (int i = 0; i < targetCol - currentCol; i++) {
-                    gamePanel.moveRight();
-                }
-            } else if (currentCol > targetCol) {
-                for (int i = 0; i < currentCol - targetCol; i++) {
-                    gamePanel.moveLeft();
-                }
+        void resize(int width, int height) {
+            if (board.length != height) {
+                board = new int[height];
+            }
+            if (features == null) {
+                features = new BoardFeatures(width, height);
+            } else {
+                features.resize(width, height);
             }
         }
+    }
+    
+    // Game state a decision is made from, captured on the game thread
+    private static class DecisionRequest {
+        final int[] rows;
+        final int[] preview;
+        int previewCount;
+        int type;
+        int rotation;
+        int row;
+        int col;
+        int sequence; // pieces placed when this piece spawned
+        long captured; // System.nanoTime() of the snapshot
+        long deadline = NO_DEADLINE;
+        
+        DecisionRequest(int height, int previewSize) {
+            rows = new int[height];
+            preview = new int[previewSize];
+        }
         
-        // Drop the piece
-        gamePanel.drop();
+        void capture(GameEngine engine) {
+            Tetromino current = engine.getCurrentTetromino();
+            engine.getBoard().copyRowsTo(rows);
+            type = current.type;
+            rotation = current.rotation;
+            row = current.row;
+            col = current.col;
+            sequence = engine.getPiecesPlaced();
+            captured = System.nanoTime();
+            previewCount = Math.min(preview.length, engine.getPreviewSize());
+            for (int i = 0; i < previewCount; i++) {
+                preview[i] = engine.getPreview(i);
+            }
+        }
     }
     
     private static class Move {
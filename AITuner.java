@@ -0,0 +1,196 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Tunes the AI evaluation weights with the cross-entropy method: each generation
+// samples weight vectors from a per-weight normal distribution, scores every
+// vector by the lines it clears over the same seeded headless games, and refits
+// the distribution to the best quarter. Games are independent and run on every
+// core. The best vector so far is saved after each generation.
+// Usage: java AITuner [generations] [population] [games] [maxPieces] [seed] [output]
+public class AITuner {
+    private static final double ELITE_FRACTION = 0.25;
+    private static final double MIN_DEVIATION = 5;
+
+    private final int population;
+    private final int games;
+    private final int maxPieces;
+    private final int width;
+    private final int height;
+    private final boolean extendedMode;
+    private final SplittableRandom random;
+
+    // Sampling distribution; the lines weight stays fixed since only the
+    // ratios between weights change which move the AI picks
+    private final double[] mean = new double[AIWeights.COUNT];
+    private final double[] deviation = new double[AIWeights.COUNT];
+    private final double[] initialDeviation = new double[AIWeights.COUNT];
+
+    private AIWeights best;
+    private double bestScore = Double.NEGATIVE_INFINITY;
+    private long totalGames;
+    private long totalNanos;
+
+    public AITuner(int population, int games, int maxPieces, long seed) {
+        GameConfig config = GameConfig.getInstance();
+        this.population = Math.max(2, population);
+        this.games = Math.max(1, games);
+        this.maxPieces = Math.max(1, maxPieces);
+        this.width = config.getFieldWidth();
+        this.height = config.getFieldHeight();
+        this.extendedMode = config.isExtendedMode();
+        this.random = new SplittableRandom(seed);
+
+        int[] start = AIWeights.getDefault().toArray();
+        for (int i = 0; i < AIWeights.COUNT; i++) {
+            mean[i] = start[i];
+            deviation[i] = i == AIWeights.LINES ? 0 : Math.max(Math.abs(start[i]) * 0.5, 50);
+            initialDeviation[i] = deviation[i];
+        }
+    }
+
+    public static void main(String[] args) {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int population = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int maxPieces = args.length > 3 ? Integer.parseInt(args[3]) : 500;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        String output = args.length > 5 ? args[5] : GameConfig.getInstance().getAiWeightsFile();
+
+        AITuner tuner = new AITuner(population, games, maxPieces, seed);
+        System.out.printf("Tuning %d generations x %d vectors x %d games on %d threads%n",
+                generations, population, games, ForkJoinPool.commonPool().getParallelism() + 1);
+        for (int g = 0; g < generations; g++) {
+            tuner.runGeneration(g, seed);
+            tuner.best.save(output, String.format("AI weights tuned by AITuner, score %.1f lines/game", tuner.bestScore));
+        }
+        System.out.println("Best weights: " + tuner.best);
+        System.out.printf("Saved to %s (%.1f lines/game, %.0f games/s overall)%n",
+                output, tuner.bestScore, tuner.getGamesPerSecond());
+    }
+
+    public void runGeneration(int generation, long seed) {
+        int[][] vectors = new int[population][];
+        for (int v = 0; v < population; v++) {
+            vectors[v] = sample();
+        }
+        // Every vector plays the same pieces, so score differences come from the weights
+        long gameSeed = seed + (long) generation * games;
+        double[] lines = new double[population * games];
+
+        long start = System.nanoTime();
+        ForkJoinPool.commonPool().invoke(new GameTask(vectors, gameSeed, lines, 0, lines.length));
+        long elapsed = System.nanoTime() - start;
+        totalGames += lines.length;
+        totalNanos += elapsed;
+
+        double[] scores = new double[population];
+        for (int v = 0; v < population; v++) {
+            for (int g = 0; g < games; g++) {
+                scores[v] += lines[v * games + g];
+            }
+            scores[v] /= games;
+        }
+        Integer[] order = new Integer[population];
+        for (int v = 0; v < population; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        int elite = Math.max(2, (int) Math.round(population * ELITE_FRACTION));
+        refit(vectors, order, elite, generation);
+        if (scores[order[0]] > bestScore) {
+            bestScore = scores[order[0]];
+            best = new AIWeights(vectors[order[0]]);
+        }
+
+        double eliteScore = 0;
+        for (int i = 0; i < elite; i++) {
+            eliteScore += scores[order[i]];
+        }
+        System.out.printf("Generation %d: best %.1f, elite %.1f lines/game, %.1f games/s%n",
+                generation + 1, scores[order[0]], eliteScore / elite, lines.length * 1e9 / elapsed);
+    }
+
+    // Elite mean and deviation, plus decaying extra noise so the search doesn't collapse early
+    private void refit(int[][] vectors, Integer[] order, int elite, int generation) {
+        for (int i = 0; i < AIWeights.COUNT; i++) {
+            if (i == AIWeights.LINES) continue;
+            double sum = 0;
+            for (int e = 0; e < elite; e++) {
+                sum += vectors[order[e]][i];
+            }
+            double m = sum / elite;
+            double var = 0;
+            for (int e = 0; e < elite; e++) {
+                double d = vectors[order[e]][i] - m;
+                var += d * d;
+            }
+            mean[i] = m;
+            deviation[i] = Math.sqrt(var / elite) + initialDeviation[i] * 0.25 / (generation + 1);
+        }
+    }
+
+    private int[] sample() {
+        int[] vector = new int[AIWeights.COUNT];
+        for (int i = 0; i < AIWeights.COUNT; i++) {
+            double sd = Math.max(deviation[i], i == AIWeights.LINES ? 0 : MIN_DEVIATION);
+            vector[i] = (int) Math.round(mean[i] + sd * gaussian());
+        }
+        return vector;
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian
+    private double gaussian() {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    // Lines cleared by one headless AI game, capped at maxPieces pieces
+    private int playGame(AIWeights weights, long seed) {
+        PieceGenerator generator = new PieceGenerator(PieceGenerator.Mode.BAG, extendedMode, seed, 3);
+        GameEngine engine = new GameEngine(width, height, 1, generator);
+        engine.start();
+        AIPlayer ai = new AIPlayer(engine);
+        ai.setWeights(weights);
+        while (engine.getPiecesPlaced() < maxPieces && ai.playPiece()) {
+            // Keep placing until game over or the piece cap
+        }
+        return engine.getPlayer1Lines();
+    }
+
+    public double getGamesPerSecond() {
+        return totalNanos == 0 ? 0 : totalGames * 1e9 / totalNanos;
+    }
+
+    // Plays games [from, to) of a generation; game i is vector i / games on seed i % games
+    private class GameTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[][] vectors;
+        private final long seed;
+        private final double[] lines;
+        private final int from;
+        private final int to;
+
+        GameTask(int[][] vectors, long seed, double[] lines, int from, int to) {
+            this.vectors = vectors;
+            this.seed = seed;
+            this.lines = lines;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int v = from / games;
+                lines[from] = playGame(new AIWeights(vectors[v]), seed + from % games);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new GameTask(vectors, seed, lines, from, mid), new GameTask(vectors, seed, lines, mid, to));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+// Weights of the AI's evaluation, one per board feature. The defaults are the
+// original hand-picked values; AITuner searches for better ones and saves them
+// to the file named by GameConfig's aiWeightsFile, which AIPlayer loads if present.
+public class AIWeights {
+    public static final int LINES = 0;
+    public static final int HOLES = 1;
+    public static final int MAX_HEIGHT = 2;
+    public static final int BUMPINESS = 3;
+    public static final int GAPS = 4;
+    public static final int NEAR_FULL_CELLS = 5;
+    public static final int WELLS = 6;
+    public static final int ROW_TRANSITIONS = 7;
+    public static final int COUNT = 8;
+
+    public static final String[] NAMES = {
+            "lines", "holes", "maxHeight", "bumpiness", "gaps", "nearFullCells", "wells", "rowTransitions"
+    };
+    private static final int[] DEFAULTS = { 10000, -300, -60, -25, -100, 500, 0, 0 };
+
+    private static AIWeights loaded;
+
+    private final int[] values;
+
+    public AIWeights() {
+        this.values = DEFAULTS.clone();
+    }
+
+    public AIWeights(int[] values) {
+        if (values.length != COUNT) {
+            throw new IllegalArgumentException("Expected " + COUNT + " weights: " + values.length);
+        }
+        this.values = values.clone();
+    }
+
+    // Weights from the configured file, read once; defaults if there is none
+    public static synchronized AIWeights getDefault() {
+        if (loaded == null) {
+            loaded = load(GameConfig.getInstance().getAiWeightsFile());
+        }
+        return loaded;
+    }
+
+    public static AIWeights load(String fileName) {
+        AIWeights weights = new AIWeights();
+        if (!new File(fileName).exists()) {
+            return weights;
+        }
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(fileName)) {
+            props.load(fis);
+            for (int i = 0; i < COUNT; i++) {
+                weights.values[i] = Integer.parseInt(props.getProperty(NAMES[i], String.valueOf(DEFAULTS[i])).trim());
+            }
+            System.out.println("Loaded AI weights from " + fileName);
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Failed to load AI weights: " + e.getMessage());
+            return new AIWeights();
+        }
+        return weights;
+    }
+
+    public void save(String fileName, String comment) {
+        Properties props = new Properties();
+        for (int i = 0; i < COUNT; i++) {
+            props.setProperty(NAMES[i], String.valueOf(values[i]));
+        }
+        try (FileOutputStream fos = new FileOutputStream(fileName)) {
+            props.store(fos, comment);
+        } catch (IOException e) {
+            System.err.println("Failed to save AI weights: " + e.getMessage());
+        }
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int[] toArray() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < COUNT; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(NAMES[i]).append('=').append(values[i]);
+        }
+        return sb.toString();
+    }
+}
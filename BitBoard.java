@@ -0,0 +1,167 @@
+import java.util.Arrays;
+
+// Board stored as one int mask per row (bit c = column c). Rule checks and the
+// AI only touch the masks; the byte color plane is kept for rendering.
+public class BitBoard {
+    public static final int MAX_WIDTH = 31;
+
+    private final int width;
+    private final int height;
+    private final int fullMask;
+    private final int[] rows;
+    private final byte[] colors;
+
+    public BitBoard(int width, int height) {
+        if (width < 1 || width > MAX_WIDTH) {
+            throw new IllegalArgumentException("Board width must be between 1 and " + MAX_WIDTH + ": " + width);
+        }
+        this.width = width;
+        this.height = height;
+        this.fullMask = fullMask(width);
+        this.rows = new int[height];
+        this.colors = new byte[width * height];
+    }
+
+    public static int fullMask(int width) {
+        return (1 << width) - 1;
+    }
+
+    // Row masks of a shape at column 0
+    public static int[] rowMasks(int[][] shape) {
+        int[] masks = new int[shape.length];
+        for (int r = 0; r < shape.length; r++) {
+            for (int c = 0; c < shape[r].length; c++) {
+                if (shape[r][c] != 0) {
+                    masks[r] |= 1 << c;
+                }
+            }
+        }
+        return masks;
+    }
+
+    // True if the piece masks fit at (row, col) inside the board without overlap
+    public static boolean fits(int[] rows, int width, int height, int[] masks, int row, int col) {
+        if (col <= -32 || col >= 32) {
+            return false;
+        }
+        int full = fullMask(width);
+        for (int r = 0; r < masks.length; r++) {
+            int m = masks[r];
+            if (m == 0) continue;
+            int br = row + r;
+            if (br < 0 || br >= height) {
+                return false;
+            }
+            if (col < 0) {
+                if ((m & ((1 << -col) - 1)) != 0) {
+                    return false;
+                }
+                m >>>= -col;
+            } else {
+                m <<= col;
+            }
+            if ((m & ~full) != 0 || (m & rows[br]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // OR the piece into the row masks; the piece must fit
+    public static void place(int[] rows, int[] masks, int row, int col) {
+        for (int r = 0; r < masks.length; r++) {
+            if (masks[r] != 0) {
+                rows[row + r] |= masks[r] << col;
+            }
+        }
+    }
+
+    // Removes full rows, shifting the rows above down. Returns lines cleared.
+    public static int clearFullRows(int[] rows, int height, int fullMask) {
+        int write = height - 1;
+        for (int r = height - 1; r >= 0; r--) {
+            if (rows[r] != fullMask) {
+                rows[write--] = rows[r];
+            }
+        }
+        int cleared = write + 1;
+        for (; write >= 0; write--) {
+            rows[write] = 0;
+        }
+        return cleared;
+    }
+
+    public boolean fits(int[] masks, int row, int col) {
+        return fits(rows, width, height, masks, row, col);
+    }
+
+    public void place(int[] masks, int row, int col, int type) {
+        place(rows, masks, row, col);
+        for (int r = 0; r < masks.length; r++) {
+            int m = masks[r];
+            int base = (row + r) * width + col;
+            while (m != 0) {
+                colors[base + Integer.numberOfTrailingZeros(m)] = (byte) type;
+                m &= m - 1;
+            }
+        }
+    }
+
+    // Same as the static version but keeps the color plane in step
+    public int clearFullRows() {
+        int write = height - 1;
+        for (int r = height - 1; r >= 0; r--) {
+            if (rows[r] != fullMask) {
+                if (write != r) {
+                    rows[write] = rows[r];
+                    System.arraycopy(colors, r * width, colors, write * width, width);
+                }
+                write--;
+            }
+        }
+        int cleared = write + 1;
+        for (; write >= 0; write--) {
+            rows[write] = 0;
+            Arrays.fill(colors, write * width, (write + 1) * width, (byte) 0);
+        }
+        return cleared;
+    }
+
+    public void clearArea(int fromRow, int toRow, int fromCol, int toCol) {
+        int mask = fullMask(toCol - fromCol + 1) << fromCol;
+        for (int r = fromRow; r <= toRow; r++) {
+            rows[r] &= ~mask;
+            Arrays.fill(colors, r * width + fromCol, r * width + toCol + 1, (byte) 0);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(rows, 0);
+        Arrays.fill(colors, (byte) 0);
+    }
+
+    // Piece type at a cell, 0 if empty
+    public int getCell(int row, int col) {
+        return colors[row * width + col];
+    }
+
+    public int getRow(int row) {
+        return rows[row];
+    }
+
+    public void copyRowsTo(int[] dest) {
+        System.arraycopy(rows, 0, dest, 0, height);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFullMask() {
+        return fullMask;
+    }
+}
@@ -0,0 +1,36 @@
+// Scores boards from their features, many boards per call. Callers lay the
+// features out as a flat structure-of-arrays float[]: feature f of board i is
+// at features[f * stride + i], so an implementation can run each feature across
+// the whole batch in one tight loop the JIT vectorizes. Implementations must be
+// safe to call from several search threads at once.
+public interface BoardEvaluator {
+    int HOLES = 0;
+    int MAX_HEIGHT = 1;
+    int BUMPINESS = 2;
+    int GAPS = 3;
+    int NEAR_FULL_CELLS = 4;
+    int WELLS = 5;
+    int ROW_TRANSITIONS = 6;
+    int FEATURE_COUNT = 7;
+
+    String[] FEATURE_NAMES = {
+            "holes", "maxHeight", "bumpiness", "gaps", "nearFullCells", "wells", "rowTransitions"
+    };
+
+    // scores[i] = value of board i for i < count, in the same units as AIWeights
+    void score(float[] features, int stride, int count, float[] scores);
+
+    // Changes whenever the scores would, so caches built with other weights aren't reused
+    long fingerprint();
+
+    // Writes one board's features as column i of a batch
+    static void writeFeatures(BoardFeatures source, float[] features, int stride, int i) {
+        features[HOLES * stride + i] = source.getHoles();
+        features[MAX_HEIGHT * stride + i] = source.getMaxHeight();
+        features[BUMPINESS * stride + i] = source.getBumpiness();
+        features[GAPS * stride + i] = source.getGaps();
+        features[NEAR_FULL_CELLS * stride + i] = source.getNearFullCells();
+        features[WELLS * stride + i] = source.getWells();
+        features[ROW_TRANSITIONS * stride + i] = source.getRowTransitions();
+    }
+}
@@ -0,0 +1,213 @@
+// Board features used by the AI evaluator, filled in one pass over the row masks.
+// After a placement that clears no lines only the columns and rows the piece
+// touched change, so update() copies the parent's features and redoes just those.
+public class BoardFeatures {
+    private int width;
+    private int height;
+    private int fullMask;
+
+    // Per-column and per-row parts that the aggregates are built from
+    private int[] heights;
+    private int[] columnHoles;
+    private int[] rowCells;
+    private int[] rowTransitions;
+
+    private int holes;          // empty cells with a filled cell above
+    private int gaps;           // holes outside columns filled to the top row
+    private int maxHeight;
+    private int bumpiness;      // sum of height differences of neighbouring columns
+    private int wells;          // sum of well depths (columns lower than both neighbours)
+    private int totalRowTransitions;
+    private int nearFullRows;   // rows at most two cells from full
+    private int nearFullCells;  // filled cells in those rows
+
+    public BoardFeatures(int width, int height) {
+        resize(width, height);
+    }
+
+    public void resize(int width, int height) {
+        if (heights != null && width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        this.fullMask = BitBoard.fullMask(width);
+        this.heights = new int[width];
+        this.columnHoles = new int[width];
+        this.rowCells = new int[height];
+        this.rowTransitions = new int[height];
+    }
+
+    // Full single pass over the board
+    public void compute(int[] rows) {
+        for (int col = 0; col < width; col++) {
+            heights[col] = 0;
+            columnHoles[col] = 0;
+        }
+        int covered = 0;
+        for (int row = 0; row < height; row++) {
+            int bits = rows[row];
+            int fresh = bits & ~covered;
+            while (fresh != 0) {
+                heights[Integer.numberOfTrailingZeros(fresh)] = height - row;
+                fresh &= fresh - 1;
+            }
+            int empty = covered & ~bits;
+            while (empty != 0) {
+                columnHoles[Integer.numberOfTrailingZeros(empty)]++;
+                empty &= empty - 1;
+            }
+            covered |= bits;
+            rowCells[row] = Integer.bitCount(bits);
+            rowTransitions[row] = transitions(bits);
+        }
+        summarizeRows(0, height - 1, true);
+        summarizeColumns();
+    }
+
+    // Features after a placement: the piece touched columns [fromCol, toCol] and
+    // rows [fromRow, toRow] of rows, which was the parent's board before it.
+    public void update(BoardFeatures parent, int[] rows, int fromCol, int toCol, int fromRow, int toRow, int linesCleared) {
+        if (linesCleared > 0 || parent.width != width || parent.height != height) {
+            // Cleared lines shift every row above them
+            compute(rows);
+            return;
+        }
+        System.arraycopy(parent.heights, 0, heights, 0, width);
+        System.arraycopy(parent.columnHoles, 0, columnHoles, 0, width);
+        System.arraycopy(parent.rowCells, 0, rowCells, 0, height);
+        System.arraycopy(parent.rowTransitions, 0, rowTransitions, 0, height);
+        totalRowTransitions = parent.totalRowTransitions;
+        nearFullRows = parent.nearFullRows;
+        nearFullCells = parent.nearFullCells;
+
+        for (int col = fromCol; col <= toCol; col++) {
+            int bit = 1 << col;
+            int top = 0;
+            while (top < height && (rows[top] & bit) == 0) {
+                top++;
+            }
+            int columnHeight = height - top;
+            int holesInColumn = 0;
+            for (int row = top + 1; row < height; row++) {
+                if ((rows[row] & bit) == 0) {
+                    holesInColumn++;
+                }
+            }
+            heights[col] = columnHeight;
+            columnHoles[col] = holesInColumn;
+        }
+        for (int row = fromRow; row <= toRow; row++) {
+            int cells = rowCells[row];
+            totalRowTransitions -= rowTransitions[row];
+            if (cells >= width - 2) {
+                nearFullRows--;
+                nearFullCells -= cells;
+            }
+            rowCells[row] = Integer.bitCount(rows[row]);
+            rowTransitions[row] = transitions(rows[row]);
+        }
+        summarizeRows(fromRow, toRow, false);
+        summarizeColumns();
+    }
+
+    public void copyFrom(BoardFeatures other) {
+        resize(other.width, other.height);
+        System.arraycopy(other.heights, 0, heights, 0, width);
+        System.arraycopy(other.columnHoles, 0, columnHoles, 0, width);
+        System.arraycopy(other.rowCells, 0, rowCells, 0, height);
+        System.arraycopy(other.rowTransitions, 0, rowTransitions, 0, height);
+        holes = other.holes;
+        gaps = other.gaps;
+        maxHeight = other.maxHeight;
+        bumpiness = other.bumpiness;
+        wells = other.wells;
+        totalRowTransitions = other.totalRowTransitions;
+        nearFullRows = other.nearFullRows;
+        nearFullCells = other.nearFullCells;
+    }
+
+    // Adds rows [fromRow, toRow] into the row aggregates, resetting them first if asked
+    private void summarizeRows(int fromRow, int toRow, boolean reset) {
+        if (reset) {
+            totalRowTransitions = 0;
+            nearFullRows = 0;
+            nearFullCells = 0;
+        }
+        for (int row = fromRow; row <= toRow; row++) {
+            totalRowTransitions += rowTransitions[row];
+            if (rowCells[row] >= width - 2) { // Close to clearing
+                nearFullRows++;
+                nearFullCells += rowCells[row];
+            }
+        }
+    }
+
+    private void summarizeColumns() {
+        holes = 0;
+        gaps = 0;
+        maxHeight = 0;
+        bumpiness = 0;
+        wells = 0;
+        for (int col = 0; col < width; col++) {
+            int h = heights[col];
+            holes += columnHoles[col];
+            if (h < height) {
+                gaps += columnHoles[col];
+            }
+            maxHeight = Math.max(maxHeight, h);
+            if (col > 0) {
+                bumpiness += Math.abs(h - heights[col - 1]);
+            }
+            int left = col > 0 ? heights[col - 1] : height;
+            int right = col < width - 1 ? heights[col + 1] : height;
+            int depth = Math.min(left, right) - h;
+            if (depth > 0) {
+                wells += depth;
+            }
+        }
+    }
+
+    // Filled/empty changes along a row, counting the walls as filled
+    private int transitions(int bits) {
+        // In a long, so the right wall still fits at MAX_WIDTH
+        long padded = ((long) bits << 1) | 1 | (1L << (width + 1));
+        return Long.bitCount((padded ^ (padded >>> 1)) & (((long) fullMask << 1) | 1));
+    }
+
+    public int getHeight(int col) {
+        return heights[col];
+    }
+
+    public int getHoles() {
+        return holes;
+    }
+
+    public int getGaps() {
+        return gaps;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public int getBumpiness() {
+        return bumpiness;
+    }
+
+    public int getWells() {
+        return wells;
+    }
+
+    public int getRowTransitions() {
+        return totalRowTransitions;
+    }
+
+    public int getNearFullRows() {
+        return nearFullRows;
+    }
+
+    public int getNearFullCells() {
+        return nearFullCells;
+    }
+}
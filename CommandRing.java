@@ -0,0 +1,185 @@
+// Bounded queue of one connection's parsed commands, waiting for the player's
+// command thread. Commands are stored in parallel primitive arrays, so queuing
+// one allocates nothing; only batches and parse errors keep an object on the
+// side. What happens when the ring is full depends on its policy:
+//   BLOCK     the connection stops being read until the ring is half empty,
+//             so TCP pushes back on the client
+//   DROP      the new command is discarded
+//   COALESCE  moves still waiting cancel out first (LEFT then RIGHT, DOWNs
+//             before a DROP); what still doesn't fit is discarded
+// Only unnumbered moves are coalesced, since numbered ones expect a reply.
+// Commands that must not be lost, like the switch to the binary protocol,
+// block under every policy.
+// One thread offers (the selector) and one polls (the command thread).
+public class CommandRing {
+    public enum Policy {
+        BLOCK, DROP, COALESCE
+    }
+
+    // Outcomes of offer()
+    public static final int QUEUED = 0;
+    public static final int COALESCED = 1;
+    public static final int DROPPED = 2;
+
+    private static final int BINARY_FLAG = 1 << 24;
+
+    final ControlServer.Connection connection;
+    private final int capacity;
+    private final int[] ops;
+    private final int[] args;  // three signed bytes, | BINARY_FLAG for binary commands
+    private final int[] seqs;  // -1 = unnumbered
+    private final Object[] extras; // batch moves or a parse error, usually null
+    private int head;
+    private int size;
+    private volatile Policy policy;
+    private boolean blocked;
+    boolean scheduled; // waiting in the player's ready queue; guarded by that queue
+
+    // Statistics
+    private long queued;
+    private long dropped;
+    private long coalesced;
+    private long blocks;
+    private int maxDepth;
+
+    public CommandRing(ControlServer.Connection connection, int capacity, Policy policy) {
+        this.connection = connection;
+        this.capacity = Math.max(1, capacity);
+        this.ops = new int[this.capacity];
+        this.args = new int[this.capacity];
+        this.seqs = new int[this.capacity];
+        this.extras = new Object[this.capacity];
+        this.policy = policy;
+    }
+
+    // True if the ring is full under BLOCK: the caller should stop reading
+    // the connection until resume() says so
+    public boolean refuses() {
+        return refuses(false);
+    }
+
+    // The same, under any policy when the command must not be dropped
+    public synchronized boolean refuses(boolean keep) {
+        if (size < capacity || (policy != Policy.BLOCK && !keep)) return false;
+        if (!blocked) {
+            blocked = true;
+            blocks++;
+        }
+        return true;
+    }
+
+    public synchronized int offer(ExternalPlayer.Command command) {
+        if (policy == Policy.COALESCE && command.seq < 0 && command.error == null && coalesce(command)) {
+            return COALESCED;
+        }
+        if (size == capacity) {
+            dropped++;
+            return DROPPED;
+        }
+        int i = (head + size) % capacity;
+        ops[i] = command.opcode;
+        args[i] = (command.a & 0xFF) | (command.b & 0xFF) << 8 | (command.c & 0xFF) << 16
+                | (command.binary ? BINARY_FLAG : 0);
+        seqs[i] = command.seq;
+        extras[i] = command.error != null ? command.error : command.actions;
+        size++;
+        queued++;
+        maxDepth = Math.max(maxDepth, size);
+        return QUEUED;
+    }
+
+    // Cancels queued moves the new one makes redundant; true if the new one
+    // needn't be queued either
+    private boolean coalesce(ExternalPlayer.Command command) {
+        if (command.opcode == ExternalPlayer.OP_LEFT || command.opcode == ExternalPlayer.OP_RIGHT) {
+            int opposite = command.opcode == ExternalPlayer.OP_LEFT ? ExternalPlayer.OP_RIGHT : ExternalPlayer.OP_LEFT;
+            if (tailIs(opposite, command.binary)) {
+                size--;
+                coalesced += 2;
+                return true;
+            }
+        } else if (command.opcode == ExternalPlayer.OP_DROP) {
+            while (tailIs(ExternalPlayer.OP_DOWN, command.binary)) {
+                size--;
+                coalesced++;
+            }
+        }
+        return false;
+    }
+
+    private boolean tailIs(int op, boolean binary) {
+        if (size == 0) return false;
+        int tail = (head + size - 1) % capacity;
+        return ops[tail] == op && ((args[tail] & BINARY_FLAG) != 0) == binary && seqs[tail] < 0;
+    }
+
+    // Moves the oldest command into the holder; false if the ring is empty
+    public synchronized boolean poll(ExternalPlayer.Command into) {
+        if (size == 0) return false;
+        int op = ops[head];
+        int packed = args[head];
+        Object extra = extras[head];
+        into.connection = connection;
+        into.binary = (packed & BINARY_FLAG) != 0;
+        into.opcode = op;
+        into.a = (byte) packed;
+        into.b = (byte) (packed >> 8);
+        into.c = (byte) (packed >> 16);
+        into.seq = seqs[head];
+        into.error = extra instanceof String ? (String) extra : null;
+        into.actions = extra instanceof byte[] ? (byte[]) extra : null;
+        extras[head] = null;
+        head = (head + 1) % capacity;
+        size--;
+        return true;
+    }
+
+    // True once a blocked ring has drained to half: reads should resume
+    public synchronized boolean resume() {
+        if (blocked && size <= capacity / 2) {
+            blocked = false;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public void setPolicy(Policy policy) {
+        this.policy = policy;
+    }
+
+    public synchronized long getQueued() {
+        return queued;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+
+    public synchronized long getBlocks() {
+        return blocks;
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+}
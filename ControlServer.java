@@ -0,0 +1,440 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Non-blocking TCP server shared by every external control port in the process.
+// One thread runs a Selector over the listening sockets and all of their
+// connections, so dozens of bots and spectators can attach without a thread
+// each. Every port belongs to a Handler (an ExternalPlayer): complete lines
+// read from a connection are passed to it, and whatever it sends back is
+// queued in that connection's write buffer and written as the socket drains.
+// A connection starts in text mode (one command per line) and can be switched
+// to binary frames: a big-endian 16-bit body length, then the body.
+public class ControlServer {
+    public interface Handler {
+        void connected(Connection connection);
+        // Both return false to refuse the command for now: the connection stops
+        // being read, with the command kept, until resumeReads() is called.
+        boolean lineReceived(Connection connection, String line);
+        // frame holds the body after the length prefix and is only valid during the call
+        boolean frameReceived(Connection connection, ByteBuffer frame);
+        void disconnected(Connection connection);
+    }
+
+    private static final int READ_BUFFER_BYTES = 4096;
+    public static final int MAX_FRAME_BYTES = READ_BUFFER_BYTES - 2;
+    private static final int WRITE_BUFFER_BYTES = 16 * 1024;
+    private static final int MAX_WRITE_BUFFER_BYTES = 1 << 20; // clients this far behind are dropped
+
+    private static ControlServer instance;
+
+    private final Map<Handler, ServerSocketChannel> listeners = new HashMap<>();
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>(); // run on the selector thread
+    private volatile Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+    private int nextId = 1;
+
+    private ControlServer() {
+    }
+
+    public static synchronized ControlServer getInstance() {
+        if (instance == null) {
+            instance = new ControlServer();
+        }
+        return instance;
+    }
+
+    // Accepts connections on the port for the handler; false if the port can't be bound
+    public synchronized boolean listen(int port, Handler handler) {
+        ServerSocketChannel server = null;
+        try {
+            if (thread == null) {
+                pending.clear();
+                selector = Selector.open();
+                running = true;
+                thread = new Thread(this::selectLoop, "ControlServer");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            server = ServerSocketChannel.open();
+            server.configureBlocking(false);
+            server.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            System.err.println("Failed to start external control server on port " + port + ": " + e.getMessage());
+            closeQuietly(server);
+            if (listeners.isEmpty()) {
+                shutdown();
+            }
+            return false;
+        }
+        listeners.put(handler, server);
+        ServerSocketChannel channel = server;
+        runOnSelector(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_ACCEPT, handler);
+            } catch (IOException e) {
+                System.err.println("Failed to register external control port " + port + ": " + e.getMessage());
+            }
+        });
+        System.out.println("External control server started on port " + port);
+        return true;
+    }
+
+    // Stops the handler's port and closes its connections
+    public synchronized void unlisten(Handler handler) {
+        ServerSocketChannel server = listeners.remove(handler);
+        if (server == null) return;
+        runOnSelector(() -> {
+            closeQuietly(server);
+            for (SelectionKey key : new ArrayList<>(selector.keys())) {
+                Object attachment = key.attachment();
+                if (attachment instanceof Connection && ((Connection) attachment).handler == handler) {
+                    ((Connection) attachment).closeNow();
+                }
+            }
+        });
+        if (listeners.isEmpty()) {
+            shutdown();
+        }
+    }
+
+    // Stops the selector thread once the queued work, including closes, has run
+    private void shutdown() {
+        if (thread == null) return;
+        runOnSelector(() -> running = false);
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        selector = null;
+    }
+
+    private void runOnSelector(Runnable task) {
+        Selector current = selector;
+        if (current == null) return; // stopped, and its sockets with it
+        pending.add(task);
+        current.wakeup();
+    }
+
+    private void selectLoop() {
+        Selector selector = this.selector;
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("External control server failed: " + e.getMessage());
+                break;
+            }
+            Runnable task;
+            while ((task = pending.poll()) != null) {
+                task.run();
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) continue;
+                if (key.isAcceptable()) {
+                    accept(key);
+                    continue;
+                }
+                Connection connection = (Connection) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                } catch (IOException e) {
+                    connection.closeNow();
+                }
+            }
+        }
+        for (SelectionKey key : new ArrayList<>(selector.keys())) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).closeNow();
+            } else {
+                closeQuietly(key.channel());
+            }
+        }
+        closeQuietly(selector);
+    }
+
+    private void accept(SelectionKey serverKey) {
+        Handler handler = (Handler) serverKey.attachment();
+        SocketChannel channel;
+        try {
+            while ((channel = ((ServerSocketChannel) serverKey.channel()).accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                Connection connection = new Connection(nextId++, channel, handler);
+                connection.key = channel.register(serverKey.selector(), SelectionKey.OP_READ, connection);
+                handler.connected(connection);
+            }
+        } catch (IOException e) {
+            System.err.println("Error accepting external connection: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Already closed
+        }
+    }
+
+    // One client socket. send() may be called from any thread; reads and
+    // writes to the socket happen on the selector thread.
+    public class Connection {
+        private final int id;
+        private final SocketChannel channel;
+        private final Handler handler;
+        private final String address;
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_BYTES);
+        private final byte[] line = new byte[READ_BUFFER_BYTES];
+        private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES); // guarded by this
+        private boolean flushQueued; // guarded by this
+        private volatile boolean open = true;
+        private volatile boolean binary;
+        private boolean closed; // selector thread only
+        private boolean readsPaused; // selector thread only
+        private SelectionKey key;
+        private volatile Object attachment;
+
+        Connection(int id, SocketChannel channel, Handler handler) {
+            this.id = id;
+            this.channel = channel;
+            this.handler = handler;
+            String remote;
+            try {
+                remote = String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                remote = "unknown";
+            }
+            this.address = remote;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public boolean isOpen() {
+            return open;
+        }
+
+        // Queues text for the client as UTF-8; callers supply the line endings
+        public void send(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            send(bytes, 0, bytes.length);
+        }
+
+        public void send(byte[] data, int offset, int length) {
+            boolean wake;
+            synchronized (this) {
+                if (!reserve(length)) return;
+                writeBuffer.put(data, offset, length);
+                wake = !flushQueued;
+                flushQueued = true;
+            }
+            if (wake) requestFlush();
+        }
+
+        // Queues the remaining bytes of the buffer, e.g. a binary frame
+        public void send(ByteBuffer data) {
+            boolean wake;
+            synchronized (this) {
+                if (!reserve(data.remaining())) return;
+                writeBuffer.put(data);
+                wake = !flushQueued;
+                flushQueued = true;
+            }
+            if (wake) requestFlush();
+        }
+
+        // Makes room for length more bytes; false (and the connection closed)
+        // if the client has fallen too far behind
+        private boolean reserve(int length) {
+            if (!open) return false;
+            if (writeBuffer.remaining() >= length) return true;
+            int needed = writeBuffer.position() + length;
+            if (needed > MAX_WRITE_BUFFER_BYTES) {
+                System.err.println("External client " + address + " is not reading; disconnecting");
+                close();
+                return false;
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(MAX_WRITE_BUFFER_BYTES,
+                    Math.max(needed, writeBuffer.capacity() * 2)));
+            writeBuffer.flip();
+            larger.put(writeBuffer);
+            writeBuffer = larger;
+            return true;
+        }
+
+        private void requestFlush() {
+            runOnSelector(() -> {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    closeNow();
+                }
+            });
+        }
+
+        // Switches incoming data from text lines to binary frames, starting
+        // with the bytes after the line being handled. Call from lineReceived.
+        public void setBinary() {
+            binary = true;
+        }
+
+        public boolean isBinary() {
+            return binary;
+        }
+
+        // The handler's own state for this connection
+        public Object getAttachment() {
+            return attachment;
+        }
+
+        public void setAttachment(Object attachment) {
+            this.attachment = attachment;
+        }
+
+        // Starts reading again after the handler refused a command; the
+        // commands already buffered are offered first
+        public void resumeReads() {
+            runOnSelector(() -> {
+                if (closed || !readsPaused) return;
+                readsPaused = false;
+                updateInterest();
+                handleBuffered();
+            });
+        }
+
+        // Closes the connection once what's already queued has been dropped
+        public void close() {
+            open = false;
+            runOnSelector(this::closeNow);
+        }
+
+        private void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                closeNow();
+                return;
+            }
+            handleBuffered();
+        }
+
+        // Hands every complete command in the read buffer to the handler
+        private void handleBuffered() {
+            readBuffer.flip();
+            while (!closed && !readsPaused && (binary ? readFrame() : readLine())) {
+                // Handled one command
+            }
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining() && !readsPaused) {
+                readBuffer.clear();
+                send("ERROR: Command too long\n");
+            }
+        }
+
+        private void pauseReads() {
+            readsPaused = true;
+            updateInterest();
+        }
+
+        private void updateInterest() {
+            boolean pendingWrites;
+            synchronized (this) {
+                pendingWrites = writeBuffer.position() > 0;
+            }
+            key.interestOps((readsPaused ? 0 : SelectionKey.OP_READ) | (pendingWrites ? SelectionKey.OP_WRITE : 0));
+        }
+
+        // Passes the next complete line to the handler; false if none is buffered
+        private boolean readLine() {
+            int start = readBuffer.position();
+            for (int i = start; i < readBuffer.limit(); i++) {
+                if (readBuffer.get(i) != '\n') continue;
+                int length = 0;
+                for (int j = start; j < i; j++) {
+                    line[length++] = readBuffer.get(j);
+                }
+                if (length > 0 && line[length - 1] == '\r') length--;
+                if (!handler.lineReceived(this, new String(line, 0, length, StandardCharsets.UTF_8))) {
+                    pauseReads();
+                    return false;
+                }
+                readBuffer.position(i + 1);
+                return true;
+            }
+            return false;
+        }
+
+        // Passes the next complete frame to the handler as the read buffer
+        // itself, limited to the frame's body; false if none is buffered
+        private boolean readFrame() {
+            int start = readBuffer.position();
+            if (readBuffer.limit() - start < 2) return false;
+            int length = readBuffer.getShort(start) & 0xFFFF;
+            if (length == 0 || length > MAX_FRAME_BYTES) {
+                System.err.println("External client " + address + " sent a bad frame; disconnecting");
+                closeNow();
+                return false;
+            }
+            int end = start + 2 + length;
+            int limit = readBuffer.limit();
+            if (end > limit) return false;
+            readBuffer.position(start + 2).limit(end);
+            boolean accepted = handler.frameReceived(this, readBuffer);
+            readBuffer.limit(limit).position(accepted ? end : start);
+            if (!accepted) {
+                pauseReads();
+            }
+            return accepted;
+        }
+
+        private void flush() throws IOException {
+            if (closed) return;
+            synchronized (this) {
+                flushQueued = false;
+                writeBuffer.flip();
+                channel.write(writeBuffer);
+                writeBuffer.compact();
+                boolean more = writeBuffer.position() > 0;
+                if (!more && writeBuffer.capacity() > WRITE_BUFFER_BYTES) {
+                    writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+                }
+                key.interestOps((readsPaused ? 0 : SelectionKey.OP_READ) | (more ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        private void closeNow() {
+            if (closed) return;
+            closed = true;
+            open = false;
+            closeQuietly(channel);
+            handler.disconnected(this);
+        }
+    }
+}
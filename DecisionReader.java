@@ -0,0 +1,238 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Reads a DecisionRecorder file one block at a time, so a file of any size is
+// scanned in the memory of a single block. next() steps through the records;
+// the getters describe the current one.
+// Usage: java DecisionReader <file> - prints a summary of the recorded decisions
+public class DecisionReader implements AutoCloseable {
+    private static final int F = BoardEvaluator.FEATURE_COUNT;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int blockRecords;
+    private final ByteBuffer frame = ByteBuffer.allocate(DecisionRecorder.FRAME_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private final Inflater inflater = new Inflater();
+    private byte[] compressed = new byte[0];
+    private byte[] raw = new byte[0];
+
+    // Columns of the current block
+    private final int[] rows;
+    private final byte[] type;
+    private final byte[] rotation;
+    private final byte[] row;
+    private final byte[] col;
+    private final int[] score;
+    private final int[] features;
+    private final byte[] lines;
+    private int count;
+    private int index;
+    private long recordsRead;
+
+    public DecisionReader(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(DecisionRecorder.HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (!readFully(header)) {
+            channel.close();
+            throw new IOException("Not a decision file: " + fileName);
+        }
+        header.flip();
+        int magic = header.getInt();
+        int version = header.getInt();
+        width = header.getInt();
+        height = header.getInt();
+        int featureCount = header.getInt();
+        blockRecords = header.getInt();
+        if (magic != DecisionRecorder.MAGIC || version != DecisionRecorder.VERSION || featureCount != F) {
+            channel.close();
+            throw new IOException("Not a decision file (or a different version): " + fileName);
+        }
+        rows = new int[height * blockRecords];
+        type = new byte[blockRecords];
+        rotation = new byte[blockRecords];
+        row = new byte[blockRecords];
+        col = new byte[blockRecords];
+        score = new int[blockRecords];
+        features = new int[F * blockRecords];
+        lines = new byte[blockRecords];
+    }
+
+    // Moves to the next record; false at the end of the file
+    public boolean next() throws IOException {
+        if (index + 1 < count) {
+            index++;
+            recordsRead++;
+            return true;
+        }
+        if (!readBlock()) {
+            return false;
+        }
+        index = 0;
+        recordsRead++;
+        return true;
+    }
+
+    private boolean readBlock() throws IOException {
+        frame.clear();
+        if (!readFully(frame)) {
+            return false;
+        }
+        frame.flip();
+        int n = frame.getInt();
+        int rawLength = frame.getInt();
+        int length = frame.getInt();
+        if (n <= 0 || n > blockRecords || rawLength != n * DecisionRecorder.rawRecordBytes(height)) {
+            throw new IOException("Corrupt block header");
+        }
+        if (compressed.length < length) {
+            compressed = new byte[length];
+        }
+        if (raw.length < rawLength) {
+            raw = new byte[rawLength];
+        }
+        ByteBuffer in = ByteBuffer.wrap(compressed, 0, length);
+        if (!readFully(in)) {
+            throw new EOFException("Truncated block");
+        }
+        inflater.reset();
+        inflater.setInput(compressed, 0, length);
+        try {
+            int got = 0;
+            while (got < rawLength && !inflater.finished()) {
+                got += inflater.inflate(raw, got, rawLength - got);
+            }
+            if (got != rawLength) {
+                throw new IOException("Corrupt block");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt block: " + e.getMessage());
+        }
+
+        ByteBuffer columns = ByteBuffer.wrap(raw, 0, rawLength).order(ByteOrder.LITTLE_ENDIAN);
+        for (int r = 0; r < height; r++) {
+            for (int i = 0; i < n; i++) {
+                rows[r * blockRecords + i] = columns.getInt();
+            }
+        }
+        columns.get(type, 0, n);
+        columns.get(rotation, 0, n);
+        columns.get(row, 0, n);
+        columns.get(col, 0, n);
+        for (int i = 0; i < n; i++) {
+            score[i] = columns.getInt();
+        }
+        for (int f = 0; f < F; f++) {
+            for (int i = 0; i < n; i++) {
+                features[f * blockRecords + i] = columns.getInt();
+            }
+        }
+        columns.get(lines, 0, n);
+        count = n;
+        return true;
+    }
+
+    // Fills the buffer; false if the file ended first
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // Row mask r of the board before the piece (bit c = column c)
+    public int getBoardRow(int r) {
+        return rows[r * blockRecords + index];
+    }
+
+    public void copyBoardTo(int[] dest) {
+        for (int r = 0; r < height; r++) {
+            dest[r] = rows[r * blockRecords + index];
+        }
+    }
+
+    public int getType() {
+        return type[index];
+    }
+
+    public int getRotation() {
+        return rotation[index];
+    }
+
+    public int getRow() {
+        return row[index];
+    }
+
+    public int getCol() {
+        return col[index];
+    }
+
+    public int getScore() {
+        return score[index];
+    }
+
+    // Feature of the board after the placement, indexed as in BoardEvaluator
+    public int getFeature(int feature) {
+        return features[feature * blockRecords + index];
+    }
+
+    public int getLines() {
+        return lines[index];
+    }
+
+    public long getRecordsRead() {
+        return recordsRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        channel.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: java DecisionReader <file>");
+            return;
+        }
+        long start = System.nanoTime();
+        long[] featureSums = new long[F];
+        long[] linesCount = new long[5];
+        try (DecisionReader reader = new DecisionReader(args[0])) {
+            while (reader.next()) {
+                for (int f = 0; f < F; f++) {
+                    featureSums[f] += reader.getFeature(f);
+                }
+                linesCount[Math.min(reader.getLines(), 4)]++;
+            }
+            long n = reader.getRecordsRead();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d decisions on a %dx%d board, read in %.2fs (%.0f decisions/s)%n",
+                    n, reader.getWidth(), reader.getHeight(), seconds, n / seconds);
+            System.out.printf("Lines per placement: 0=%d 1=%d 2=%d 3=%d 4=%d%n",
+                    linesCount[0], linesCount[1], linesCount[2], linesCount[3], linesCount[4]);
+            StringBuilder means = new StringBuilder("Mean features after placement:");
+            for (int f = 0; f < F; f++) {
+                means.append(String.format(" %s %.2f", BoardEvaluator.FEATURE_NAMES[f], n == 0 ? 0.0 : (double) featureSums[f] / n));
+            }
+            System.out.println(means);
+        }
+    }
+}
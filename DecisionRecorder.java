@@ -0,0 +1,306 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+// Streams AI placement decisions to a compact file for offline analysis. Records
+// are gathered into blocks of BLOCK_RECORDS, stored column by column (every
+// record's row 0, then every record's row 1, ..., then all piece types, and so
+// on) so similar values sit together, and each block is Deflate-compressed.
+// Compression and writing happen on a background thread through a FileChannel.
+// Only QUEUED_BLOCKS blocks exist, so memory stays bounded; record() runs on the
+// game thread and never waits, so when the writer falls behind and no block is
+// free the decision is dropped and counted instead. DecisionReader reads the
+// files back.
+//
+// File layout (little-endian):
+//   header  magic "TDR1", version, width, height, feature count, records per block
+//   blocks  record count, raw bytes, compressed bytes, then the compressed columns:
+//           rows (int per board row), type, rotation, row, col (byte each),
+//           score (int), features (int each, BoardEvaluator order), lines (byte)
+public class DecisionRecorder implements AutoCloseable {
+    public static final int MAGIC = 0x31524454; // "TDR1"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 24;
+    public static final int FRAME_BYTES = 12;
+    public static final int BLOCK_RECORDS = 4096;
+    private static final int QUEUED_BLOCKS = 4;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+    private static final int F = BoardEvaluator.FEATURE_COUNT;
+
+    // One recorder per file, shared by every AI player in the process
+    private static final Map<String, DecisionRecorder> SHARED = new HashMap<>();
+
+    private final String fileName;
+    private final int width;
+    private final int height;
+    private final FileChannel channel;
+    private final BlockingQueue<Block> free = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+    private final BlockingQueue<Block> full = new ArrayBlockingQueue<>(QUEUED_BLOCKS + 1);
+    private final Block endOfStream;
+    private final Thread writer;
+    private Block current;
+    private boolean closed;
+    private volatile boolean failed;
+
+    // Statistics, updated by the writer thread
+    private volatile long records;
+    private volatile long rawBytes;
+    private volatile long fileBytes;
+    private long dropped; // guarded by this
+
+    public DecisionRecorder(String fileName, int width, int height) throws IOException {
+        this.fileName = fileName;
+        this.width = width;
+        this.height = height;
+        this.channel = FileChannel.open(Paths.get(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(F).putInt(BLOCK_RECORDS);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        fileBytes = HEADER_BYTES;
+
+        for (int i = 0; i < QUEUED_BLOCKS; i++) {
+            free.add(new Block(height));
+        }
+        endOfStream = new Block(0);
+        writer = new Thread(this::writeLoop, "DecisionRecorder");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Recorder for the file, or null if it can't be created. Shared recorders
+    // are closed when the JVM exits.
+    public static synchronized DecisionRecorder shared(String fileName, int width, int height) {
+        DecisionRecorder recorder = SHARED.get(fileName);
+        if (recorder != null) {
+            if (recorder.width != width || recorder.height != height) {
+                System.err.println("Decision file " + fileName + " is already recording a "
+                        + recorder.width + "x" + recorder.height + " board");
+                return null;
+            }
+            return recorder;
+        }
+        try {
+            recorder = new DecisionRecorder(fileName, width, height);
+        } catch (IOException e) {
+            System.err.println("Failed to open decision file: " + e.getMessage());
+            return null;
+        }
+        SHARED.put(fileName, recorder);
+        DecisionRecorder toClose = recorder;
+        Runtime.getRuntime().addShutdownHook(new Thread(toClose::close));
+        System.out.println("Recording AI decisions to " + fileName);
+        return recorder;
+    }
+
+    // Adds one decision: the board before the piece, the placement, its search
+    // score, the features of the board after it and the lines it cleared
+    public synchronized void record(int[] rows, int type, int rotation, int row, int col,
+                                    int score, BoardFeatures after, int lines) {
+        if (closed || failed) return;
+        if (current == null) {
+            current = free.poll();
+            if (current == null) {
+                dropped++;
+                return;
+            }
+            current.count = 0;
+        }
+        Block block = current;
+        int i = block.count++;
+        for (int r = 0; r < height; r++) {
+            block.rows[r * BLOCK_RECORDS + i] = rows[r];
+        }
+        block.type[i] = (byte) type;
+        block.rotation[i] = (byte) rotation;
+        block.row[i] = (byte) row;
+        block.col[i] = (byte) col;
+        block.score[i] = score;
+        int[] features = block.features;
+        features[BoardEvaluator.HOLES * BLOCK_RECORDS + i] = after.getHoles();
+        features[BoardEvaluator.MAX_HEIGHT * BLOCK_RECORDS + i] = after.getMaxHeight();
+        features[BoardEvaluator.BUMPINESS * BLOCK_RECORDS + i] = after.getBumpiness();
+        features[BoardEvaluator.GAPS * BLOCK_RECORDS + i] = after.getGaps();
+        features[BoardEvaluator.NEAR_FULL_CELLS * BLOCK_RECORDS + i] = after.getNearFullCells();
+        features[BoardEvaluator.WELLS * BLOCK_RECORDS + i] = after.getWells();
+        features[BoardEvaluator.ROW_TRANSITIONS * BLOCK_RECORDS + i] = after.getRowTransitions();
+        block.lines[i] = (byte) lines;
+        if (block.count == BLOCK_RECORDS) {
+            submit();
+        }
+    }
+
+    private void submit() {
+        full.add(current); // never full: it has room for every block and the end marker
+        current = null;
+    }
+
+    // Writes out the last partial block and waits for the writer to finish
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            if (current != null && current.count > 0) {
+                submit();
+            }
+            try {
+                full.put(endOfStream);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (DecisionRecorder.class) {
+            SHARED.remove(fileName, this);
+        }
+        System.out.println("Decision file " + fileName + ": " + getStats());
+    }
+
+    private void writeLoop() {
+        ByteBuffer raw = ByteBuffer.allocate(BLOCK_RECORDS * rawRecordBytes(height)).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] compressed = new byte[raw.capacity() + raw.capacity() / 100 + 64];
+        ByteBuffer out = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            while (true) {
+                Block block = full.take();
+                if (block == endOfStream) break;
+                try {
+                    if (!failed) {
+                        int rawLength = serialize(block, raw);
+                        deflater.reset();
+                        deflater.setInput(raw.array(), 0, rawLength);
+                        deflater.finish();
+                        int length = 0;
+                        while (!deflater.finished()) {
+                            if (length == compressed.length) {
+                                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                            }
+                            length += deflater.deflate(compressed, length, compressed.length - length);
+                        }
+                        if (out.remaining() < FRAME_BYTES + length) {
+                            drain(out);
+                        }
+                        out.putInt(block.count).putInt(rawLength).putInt(length);
+                        if (out.remaining() >= length) {
+                            out.put(compressed, 0, length);
+                        } else {
+                            drain(out);
+                            ByteBuffer large = ByteBuffer.wrap(compressed, 0, length);
+                            while (large.hasRemaining()) {
+                                channel.write(large);
+                            }
+                        }
+                        records += block.count;
+                        rawBytes += rawLength;
+                        fileBytes += FRAME_BYTES + length;
+                    }
+                } catch (IOException e) {
+                    failed = true;
+                    System.err.println("Failed to write decision file: " + e.getMessage());
+                } finally {
+                    free.put(block);
+                }
+            }
+            drain(out);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failed = true;
+            System.err.println("Failed to write decision file: " + e.getMessage());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void drain(ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    // Lays a block's columns out one after another; returns the byte count
+    private int serialize(Block block, ByteBuffer raw) {
+        int n = block.count;
+        raw.clear();
+        for (int r = 0; r < height; r++) {
+            for (int i = 0; i < n; i++) {
+                raw.putInt(block.rows[r * BLOCK_RECORDS + i]);
+            }
+        }
+        raw.put(block.type, 0, n);
+        raw.put(block.rotation, 0, n);
+        raw.put(block.row, 0, n);
+        raw.put(block.col, 0, n);
+        for (int i = 0; i < n; i++) {
+            raw.putInt(block.score[i]);
+        }
+        for (int f = 0; f < F; f++) {
+            for (int i = 0; i < n; i++) {
+                raw.putInt(block.features[f * BLOCK_RECORDS + i]);
+            }
+        }
+        raw.put(block.lines, 0, n);
+        return raw.position();
+    }
+
+    // Uncompressed bytes per record for a board height
+    static int rawRecordBytes(int height) {
+        return 4 * height + 4 + 4 + 4 * F + 1;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    public String getStats() {
+        return String.format("%d decisions, %.1f MB, %.1f bytes/decision, compression %.1fx, %d dropped",
+                records, fileBytes / 1e6, records == 0 ? 0.0 : (double) fileBytes / records,
+                fileBytes <= HEADER_BYTES ? 0.0 : (double) rawBytes / (fileBytes - HEADER_BYTES), getDropped());
+    }
+
+    // Column storage for up to BLOCK_RECORDS decisions
+    private static class Block {
+        final int[] rows;
+        final byte[] type = new byte[BLOCK_RECORDS];
+        final byte[] rotation = new byte[BLOCK_RECORDS];
+        final byte[] row = new byte[BLOCK_RECORDS];
+        final byte[] col = new byte[BLOCK_RECORDS];
+        final int[] score = new int[BLOCK_RECORDS];
+        final int[] features = new int[F * BLOCK_RECORDS];
+        final byte[] lines = new byte[BLOCK_RECORDS];
+        int count;
+
+        Block(int height) {
+            rows = new int[height * BLOCK_RECORDS];
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Pushes one player's game to subscribed connections as it changes, so bots
+// don't have to poll GET_BOARD after every move. Runs as a GameEngine listener
+// on the game thread. The board goes out as deltas: only the rows that differ
+// from the last board pushed, which every subscriber holds because each one
+// starts from a keyframe of the full state. Binary connections get frames laid
+// out like ExternalPlayer's replies (code, status 0, payload):
+//   EV_PIECE_SPAWNED, EV_PIECE_MOVED  the piece, as ExternalPlayer's descriptor
+//   EV_BOARD          changed row count (byte), then row (byte) and mask (int) for each
+//   EV_LINES_CLEARED  lines (byte)
+//   EV_SCORE          player 1 score, lines, player 2 score, lines (ints)
+//   EV_GAME_OVER      nothing
+// Text connections get "EVENT <name> <values>" lines with the same values.
+// A keyframe is the OP_KEYFRAME reply: width, height (bytes), every row (ints),
+// the piece, the scores (ints) and game over (byte); as text, "KEYFRAME <values>".
+// Asked for with a sequence number, it carries it like any other reply.
+public class EventStream implements GameEngine.Listener {
+    public static final int EV_PIECE_SPAWNED = 64;
+    public static final int EV_PIECE_MOVED = 65;
+    public static final int EV_BOARD = 66;
+    public static final int EV_LINES_CLEARED = 67;
+    public static final int EV_SCORE = 68;
+    public static final int EV_GAME_OVER = 69;
+
+    private final GameEngine engine;
+    private final List<ControlServer.Connection> subscribers = new CopyOnWriteArrayList<>();
+    private final int[] sentRows;    // board every subscriber has
+    private final int[] sentScore = new int[4];
+    // The event being built, as a frame and as a text line; game thread only
+    private ByteBuffer frame;
+    private final StringBuilder text = new StringBuilder();
+
+    public EventStream(GameEngine engine) {
+        this.engine = engine;
+        this.sentRows = new int[engine.getBoard().getHeight()];
+        this.frame = ByteBuffer.allocateDirect(64 + 5 * sentRows.length);
+    }
+
+    // The rest run on the game thread
+
+    // Sends the connection a keyframe, then every change after it
+    public void subscribe(ControlServer.Connection connection) {
+        keyframe(connection, connection.isBinary(), -1);
+        if (!subscribers.contains(connection)) {
+            subscribers.add(connection);
+        }
+    }
+
+    // Safe from any thread
+    public void unsubscribe(ControlServer.Connection connection) {
+        subscribers.remove(connection);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    // Sends the full state to one connection, in the protocol of the command
+    // that asked for it; seq is that command's number, or -1
+    public void keyframe(ControlServer.Connection connection, boolean binary, int seq) {
+        BitBoard board = engine.getBoard();
+        board.copyRowsTo(sentRows);
+        readScore(sentScore);
+
+        begin(ExternalPlayer.OP_KEYFRAME, seq, "KEYFRAME");
+        put1(board.getWidth());
+        put1(board.getHeight());
+        for (int row = 0; row < sentRows.length; row++) {
+            put4(sentRows[row]);
+        }
+        putPiece();
+        for (int i = 0; i < 4; i++) {
+            put4(sentScore[i]);
+        }
+        put1(engine.isGameOver() ? 1 : 0);
+        send(connection, binary);
+    }
+
+    @Override
+    public void pieceSpawned(Tetromino piece) {
+        if (subscribers.isEmpty()) return;
+        begin(EV_PIECE_SPAWNED, "EVENT SPAWN");
+        putPiece();
+        publish();
+    }
+
+    @Override
+    public void pieceMoved(Tetromino piece) {
+        pieceChanged();
+    }
+
+    @Override
+    public void pieceRotated(Tetromino piece) {
+        pieceChanged();
+    }
+
+    @Override
+    public void pieceFell(Tetromino piece) {
+        pieceChanged();
+    }
+
+    private void pieceChanged() {
+        if (subscribers.isEmpty()) return;
+        begin(EV_PIECE_MOVED, "EVENT MOVE");
+        putPiece();
+        publish();
+    }
+
+    @Override
+    public void piecePlaced(int linesCleared) {
+        if (subscribers.isEmpty()) return;
+        boardChanged();
+        if (linesCleared > 0) {
+            begin(EV_LINES_CLEARED, "EVENT LINES");
+            put1(linesCleared);
+            publish();
+        }
+        scoreChanged();
+    }
+
+    @Override
+    public void powerUpActivated(String powerUp) {
+        if (subscribers.isEmpty()) return;
+        boardChanged();
+        scoreChanged();
+    }
+
+    @Override
+    public void gameOver() {
+        if (subscribers.isEmpty()) return;
+        boardChanged();
+        begin(EV_GAME_OVER, "EVENT GAME_OVER");
+        publish();
+    }
+
+    // Pushes the rows that changed since the last push, if any
+    private void boardChanged() {
+        BitBoard board = engine.getBoard();
+        int changed = 0;
+        for (int row = 0; row < sentRows.length; row++) {
+            if (board.getRow(row) != sentRows[row]) changed++;
+        }
+        if (changed == 0) return;
+        begin(EV_BOARD, "EVENT BOARD");
+        put1(changed);
+        for (int row = 0; row < sentRows.length; row++) {
+            int mask = board.getRow(row);
+            if (mask != sentRows[row]) {
+                sentRows[row] = mask;
+                put1(row);
+                put4(mask);
+            }
+        }
+        publish();
+    }
+
+    private void scoreChanged() {
+        if (engine.getPlayer1Score() == sentScore[0] && engine.getPlayer1Lines() == sentScore[1]
+                && engine.getPlayer2Score() == sentScore[2] && engine.getPlayer2Lines() == sentScore[3]) {
+            return;
+        }
+        readScore(sentScore);
+        begin(EV_SCORE, "EVENT SCORE");
+        for (int i = 0; i < 4; i++) {
+            put4(sentScore[i]);
+        }
+        publish();
+    }
+
+    private void readScore(int[] score) {
+        score[0] = engine.getPlayer1Score();
+        score[1] = engine.getPlayer1Lines();
+        score[2] = engine.getPlayer2Score();
+        score[3] = engine.getPlayer2Lines();
+    }
+
+    private void begin(int code, String name) {
+        begin(code, -1, name);
+    }
+
+    private void begin(int code, int seq, String name) {
+        frame.clear();
+        frame.putShort((short) 0);
+        text.setLength(0);
+        if (seq >= 0) {
+            frame.put((byte) (code | ExternalPlayer.SEQUENCED)).put((byte) ExternalPlayer.STATUS_OK).putShort((short) seq);
+            text.append('#').append(seq).append(' ');
+        } else {
+            frame.put((byte) code).put((byte) ExternalPlayer.STATUS_OK);
+        }
+        text.append(name);
+    }
+
+    private void put1(int value) {
+        frame.put((byte) value);
+        text.append(' ').append(value);
+    }
+
+    private void put4(int value) {
+        frame.putInt(value);
+        text.append(' ').append(value);
+    }
+
+    private void putPiece() {
+        int start = frame.position();
+        ExternalPlayer.putPiece(frame, engine.getCurrentTetromino());
+        for (int i = start; i < frame.position(); i++) {
+            text.append(' ').append(frame.get(i));
+        }
+    }
+
+    private void publish() {
+        frame.putShort(0, (short) (frame.position() - 2));
+        int end = frame.position();
+        String line = null;
+        for (ControlServer.Connection connection : subscribers) {
+            if (!connection.isOpen()) {
+                subscribers.remove(connection);
+            } else if (connection.isBinary()) {
+                frame.limit(end).position(0);
+                connection.send(frame);
+            } else {
+                if (line == null) line = text.append('\n').toString();
+                connection.send(line);
+            }
+        }
+    }
+
+    private void send(ControlServer.Connection connection, boolean binary) {
+        frame.putShort(0, (short) (frame.position() - 2));
+        if (binary) {
+            frame.flip();
+            connection.send(frame);
+        } else {
+            connection.send(text.append('\n').toString());
+        }
+    }
+}
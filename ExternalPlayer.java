@@ -1,223 +1,783 @@
-import java.io.*;
-import java.net.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Control of one player over TCP. The sockets are served by the shared
+// ControlServer on the player's port (player1Port / player2Port), so any number
+// of bots and spectators can connect; each reply goes back to the connection
+// that sent the command. Commands run one at a time on this player's command
+// thread, which keeps the selector thread from waiting on the game thread.
+// Each connection's commands wait in its own bounded CommandRing, and the
+// command thread takes one from each waiting connection in turn, so a client
+// flooding commands can't hold up the others; the ring's policy (QUEUE
+// <BLOCK|DROP|COALESCE>) decides what happens when it fills.
+//
+// Connections speak the text protocol (one command per line) until they send
+// BINARY; after the "OK: Binary protocol" line every command and reply is a
+// frame: a big-endian 16-bit body length, then the body.
+//   command body  opcode (byte), then its arguments:
+//                 OP_PLACE rotation, column; OP_PLACE_AT rotation, row, column
+//                 (signed bytes); OP_BATCH a count, then that many
+//                 GameEngine.Action ordinals (bytes); OP_QUEUE a
+//                 CommandRing.Policy ordinal (byte)
+//   reply body    the command's opcode, a STATUS_* byte, then for
+//                 OP_STATUS        flags (1 = game over, 2 = paused), current player (byte), level (int)
+//                 OP_GET_SCORE     player 1 score, lines, player 2 score, lines (ints)
+//                 OP_GET_BOARD     width, height (bytes), one int per row from the
+//                                  top (bit c = column c), then the piece
+//                 OP_GET_CURRENT_PIECE  the piece: type, rotation, row, column,
+//                                  special (0/1), power-up (1 + Tetromino.POWER_UPS
+//                                  index, 0 = none), one byte each
+//                 OP_GET_POWERUPS  score multiplier (int), gravity mode (byte), freeze time (int)
+//                 OP_BATCH         moves that changed the piece's position (byte)
+//                 OP_QUEUE_STATS   policy (byte), depth, capacity, max depth (ints),
+//                                  queued, dropped, coalesced, times blocked (longs)
+// Clients can send any number of commands without waiting. To match replies
+// to commands, a text command can start with "#<n> " and its reply then starts
+// the same way; a binary opcode can carry the SEQUENCED flag.
+// SUBSCRIBE starts an EventStream of game changes on the connection, opening
+// with a keyframe; KEYFRAME sends the full state again.
+public class ExternalPlayer implements ControlServer.Handler {
+    public static final int PROTOCOL_VERSION = 1;
+
+    public static final int OP_LEFT = 1;
+    public static final int OP_RIGHT = 2;
+    public static final int OP_DOWN = 3;
+    public static final int OP_ROTATE = 4;
+    public static final int OP_DROP = 5;
+    public static final int OP_PLACE = 6;
+    public static final int OP_PLACE_AT = 7;
+    public static final int OP_PAUSE = 8;
+    public static final int OP_RESET = 9;
+    public static final int OP_STATUS = 10;
+    public static final int OP_GET_SCORE = 11;
+    public static final int OP_GET_BOARD = 12;
+    public static final int OP_GET_CURRENT_PIECE = 13;
+    public static final int OP_GET_POWERUPS = 14;
+    public static final int OP_ACTIVATE_POWERUP = 15;
+    public static final int OP_SUBSCRIBE = 16;
+    public static final int OP_UNSUBSCRIBE = 17;
+    public static final int OP_KEYFRAME = 18;
+    public static final int OP_BATCH = 19;
+    public static final int OP_QUEUE = 20;
+    public static final int OP_QUEUE_STATS = 21;
+    // Set on a command's opcode when a 16-bit sequence number follows it; the
+    // reply then has the flag too, and the number after its status byte
+    public static final int SEQUENCED = 0x80;
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_IGNORED = 1; // game over or paused
+    public static final int STATUS_ERROR = 2;
+    public static final int STATUS_DROPPED = 3; // queue full; numbered commands only
+
+    // Commands that never reach the game: the binary switch and bad input
+    private static final int OP_BINARY = -1;
+    private static final int OP_INVALID = 0;
+
+    private static final String PLACE_USAGE = "ERROR: Usage: PLACE <rotation> [<row>] <column>";
+    private static final String BATCH_USAGE = "ERROR: Usage: BATCH <LEFT|RIGHT|DOWN|UP|DROP>...";
+    private static final int MAX_BATCH = 255;
+    private static final int PIECE_BYTES = 6;
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
 
-public class ExternalPlayer {
     private TetrisPanel gamePanel;
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private PrintWriter out;
-    private BufferedReader in;
-    private BlockingQueue<String> commandQueue;
-    private boolean isRunning;
+    private final int playerNumber;
+    private final int port;
+    private final Set<ControlServer.Connection> connections = ConcurrentHashMap.newKeySet();
+    private final int queueSize;
+    private final CommandRing.Policy queuePolicy;
+    private final ArrayDeque<CommandRing> ready = new ArrayDeque<>(); // rings with commands, guarded by itself
+    private volatile boolean isRunning;
+    private volatile boolean hadClients;
     private Thread commandProcessor;
-    
-    public ExternalPlayer(TetrisPanel gamePanel) {
+    private EventStream events;
+    private final Command parsed = new Command(); // selector thread only
+    private final ByteBuffer dropFrame = ByteBuffer.allocateDirect(6); // selector thread only
+    private final Command current = new Command(); // command thread only
+    private ByteBuffer frame = ByteBuffer.allocateDirect(256); // command thread only
+
+    // Queue statistics of connections that have closed
+    private long closedQueued;
+    private long closedDropped;
+    private long closedCoalesced;
+    private long closedBlocks;
+
+    public ExternalPlayer(TetrisPanel gamePanel, int playerNumber) {
         this.gamePanel = gamePanel;
-        this.commandQueue = new LinkedBlockingQueue<>();
+        this.playerNumber = playerNumber;
+        GameConfig config = GameConfig.getInstance();
+        this.port = playerNumber == 2 ? config.getPlayer2Port() : config.getPlayer1Port();
+        this.queueSize = config.getExternalQueueSize();
+        this.queuePolicy = config.getExternalQueuePolicy();
         this.isRunning = false;
     }
-    
+
     public void startExternalControl() {
-        try {
-            serverSocket = new ServerSocket(12345);
-            System.out.println("External control server started on port 12345");
-            isRunning = true;
-            
-            // Start command processor thread
-            commandProcessor = new Thread(this::processCommands);
-            commandProcessor.start();
-            
-            // Accept client connection
-            new Thread(this::acceptConnection).start();
-            
-        } catch (IOException e) {
-            System.err.println("Failed to start external control server: " + e.getMessage());
-        }
-    }
-    
+        if (isRunning) return;
+        isRunning = true;
+
+        // Start command processor thread
+        commandProcessor = new Thread(this::processCommands, "ExternalPlayer-" + playerNumber);
+        commandProcessor.setDaemon(true);
+        commandProcessor.start();
+
+        events = new EventStream(gamePanel.getEngine());
+        gamePanel.getEngine().addListener(events);
+
+        if (!ControlServer.getInstance().listen(port, this)) {
+            stopExternalControl();
+        }
+    }
+
     public void stopExternalControl() {
+        if (!isRunning) return;
         isRunning = false;
-        try {
-            if (clientSocket != null) clientSocket.close();
-            if (serverSocket != null) serverSocket.close();
-        } catch (IOException e) {
-            System.err.println("Error closing external control: " + e.getMessage());
+        ControlServer.getInstance().unlisten(this);
+        gamePanel.getEngine().removeListener(events);
+        commandProcessor.interrupt();
+        synchronized (ready) {
+            ready.clear();
+        }
+        if (hadClients) {
+            System.out.println("External player " + playerNumber + " commands: " + getQueueStats());
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    // Queue counters summed over every connection so far
+    public synchronized String getQueueStats() {
+        long queued = closedQueued;
+        long dropped = closedDropped;
+        long coalesced = closedCoalesced;
+        long blocks = closedBlocks;
+        int depth = 0;
+        for (ControlServer.Connection connection : connections) {
+            CommandRing ring = (CommandRing) connection.getAttachment();
+            queued += ring.getQueued();
+            dropped += ring.getDropped();
+            coalesced += ring.getCoalesced();
+            blocks += ring.getBlocks();
+            depth += ring.size();
+        }
+        return String.format("%d connections, %d waiting, %d queued, %d dropped, %d coalesced, reads blocked %d times",
+                connections.size(), depth, queued, dropped, coalesced, blocks);
+    }
+
+    @Override
+    public void connected(ControlServer.Connection connection) {
+        connection.setAttachment(new CommandRing(connection, queueSize, queuePolicy));
+        connections.add(connection);
+        hadClients = true;
+        System.out.println("External client " + connection.getAddress() + " connected to player " + playerNumber);
+        connection.send("Connected to Tetris game (player " + playerNumber + "). Commands:\n"
+                + "MOVEMENT: LEFT, RIGHT, DOWN, UP, DROP, PLACE <rotation> [<row>] <column>\n"
+                + "GAME: PAUSE, RESET, STATUS\n"
+                + "INFO: GET_SCORE, GET_BOARD, GET_CURRENT_PIECE\n"
+                + "EXTENDED: ACTIVATE_POWERUP, GET_POWERUPS\n"
+                + "STREAM: SUBSCRIBE, UNSUBSCRIBE, KEYFRAME\n"
+                + "QUEUE: QUEUE <BLOCK|DROP|COALESCE>, QUEUE_STATS\n"
+                + "PROTOCOL: BINARY\n");
+    }
+
+    // Text commands are parsed here, on the selector thread, into the same
+    // opcodes binary clients send
+    @Override
+    public boolean lineReceived(ControlServer.Connection connection, String line) {
+        if (!isRunning) return true;
+        CommandRing ring = (CommandRing) connection.getAttachment();
+        if (ring.refuses()) return false;
+        String command = line.trim().toUpperCase();
+        int seq = -1;
+        if (command.startsWith("#")) {
+            int space = command.indexOf(' ');
+            try {
+                seq = Integer.parseInt(space < 0 ? command.substring(1) : command.substring(1, space));
+            } catch (NumberFormatException e) {
+                seq = -1;
+            }
+            if (seq < 0) {
+                enqueue(ring, parsed.set(connection, false, OP_INVALID, 0, 0, 0,
+                        "ERROR: Bad sequence number: " + command));
+                return true;
+            }
+            command = space < 0 ? "" : command.substring(space + 1).trim();
+        }
+        if (command.equals("BINARY")) {
+            // The acknowledgement can't be dropped once the connection has
+            // switched, so wait for room whatever the policy
+            if (ring.refuses(true)) return false;
+            // Switch now, so the bytes after this line are read as frames
+            connection.setBinary();
+            parsed.set(connection, false, OP_BINARY, 0, 0, 0, null).seq = seq;
+            enqueue(ring, parsed);
+            return true;
+        }
+        parseLine(connection, command).seq = seq;
+        enqueue(ring, parsed);
+        return true;
+    }
+
+    private Command parseLine(ControlServer.Connection connection, String command) {
+        int opcode;
+        switch (command) {
+            case "LEFT": opcode = OP_LEFT; break;
+            case "RIGHT": opcode = OP_RIGHT; break;
+            case "DOWN": opcode = OP_DOWN; break;
+            case "UP": opcode = OP_ROTATE; break;
+            case "DROP": opcode = OP_DROP; break;
+            case "PAUSE": opcode = OP_PAUSE; break;
+            case "RESET": opcode = OP_RESET; break;
+            case "STATUS": opcode = OP_STATUS; break;
+            case "GET_SCORE": opcode = OP_GET_SCORE; break;
+            case "GET_BOARD": opcode = OP_GET_BOARD; break;
+            case "GET_CURRENT_PIECE": opcode = OP_GET_CURRENT_PIECE; break;
+            case "GET_POWERUPS": opcode = OP_GET_POWERUPS; break;
+            case "ACTIVATE_POWERUP": opcode = OP_ACTIVATE_POWERUP; break;
+            case "SUBSCRIBE": opcode = OP_SUBSCRIBE; break;
+            case "UNSUBSCRIBE": opcode = OP_UNSUBSCRIBE; break;
+            case "KEYFRAME": opcode = OP_KEYFRAME; break;
+            case "QUEUE_STATS": opcode = OP_QUEUE_STATS; break;
+            default:
+                if (command.startsWith("PLACE")) {
+                    return parsePlace(connection, command);
+                } else if (command.startsWith("BATCH")) {
+                    return parseBatch(connection, command);
+                } else if (command.startsWith("QUEUE ")) {
+                    try {
+                        return setPolicy(connection, false, CommandRing.Policy.valueOf(command.substring(6).trim()));
+                    } catch (IllegalArgumentException e) {
+                        return parsed.set(connection, false, OP_INVALID, 0, 0, 0,
+                                "ERROR: Usage: QUEUE <BLOCK|DROP|COALESCE>");
+                    }
+                }
+                return parsed.set(connection, false, OP_INVALID, 0, 0, 0, "ERROR: Unknown command: " + command);
         }
+        return parsed.set(connection, false, opcode, 0, 0, 0, null);
     }
-    
-    private void acceptConnection() {
+
+    // PLACE <rotation> <column>: rotate, shift, hard drop and lock in one step.
+    // PLACE <rotation> <row> <column> locks at any reachable spot (tucks, spins).
+    private Command parsePlace(ControlServer.Connection connection, String command) {
+        String[] parts = command.split("\\s+");
+        if (parts.length != 3 && parts.length != 4) {
+            return parsed.set(connection, false, OP_INVALID, 0, 0, 0, PLACE_USAGE);
+        }
+        int[] args = new int[parts.length - 1];
         try {
-            clientSocket = serverSocket.accept();
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            
-            out.println("Connected to Tetris game. Commands:");
-            out.println("MOVEMENT: LEFT, RIGHT, DOWN, UP, DROP");
-            out.println("GAME: PAUSE, RESET, STATUS");
-            out.println("INFO: GET_SCORE, GET_BOARD, GET_CURRENT_PIECE");
-            out.println("EXTENDED: ACTIVATE_POWERUP, GET_POWERUPS");
-            
-            String inputLine;
-            while (isRunning && (inputLine = in.readLine()) != null) {
-                commandQueue.offer(inputLine.trim().toUpperCase());
-            }
-        } catch (IOException e) {
-            if (isRunning) {
-                System.err.println("Error in external control connection: " + e.getMessage());
-            }
-        }
-    }
-    
+            for (int i = 0; i < args.length; i++) {
+                args[i] = Integer.parseInt(parts[i + 1]);
+                if (args[i] != (byte) args[i]) {
+                    return parsed.set(connection, false, OP_INVALID, 0, 0, 0, "ERROR: Placement not reachable");
+                }
+            }
+        } catch (NumberFormatException e) {
+            return parsed.set(connection, false, OP_INVALID, 0, 0, 0, PLACE_USAGE);
+        }
+        return args.length == 2
+                ? parsed.set(connection, false, OP_PLACE, args[0], args[1], 0, null)
+                : parsed.set(connection, false, OP_PLACE_AT, args[0], args[1], args[2], null);
+    }
+
+    // BATCH <move>...: runs the whole sequence on the game thread with no
+    // gravity step in between, and answers once
+    private Command parseBatch(ControlServer.Connection connection, String command) {
+        String[] parts = command.split("\\s+");
+        if (parts.length < 2 || parts.length > MAX_BATCH + 1) {
+            return parsed.set(connection, false, OP_INVALID, 0, 0, 0, BATCH_USAGE);
+        }
+        byte[] actions = new byte[parts.length - 1];
+        for (int i = 0; i < actions.length; i++) {
+            GameEngine.Action action;
+            switch (parts[i + 1]) {
+                case "LEFT": action = GameEngine.Action.LEFT; break;
+                case "RIGHT": action = GameEngine.Action.RIGHT; break;
+                case "DOWN": action = GameEngine.Action.DOWN; break;
+                case "UP": action = GameEngine.Action.ROTATE; break;
+                case "DROP": action = GameEngine.Action.DROP; break;
+                default:
+                    return parsed.set(connection, false, OP_INVALID, 0, 0, 0, BATCH_USAGE);
+            }
+            actions[i] = (byte) action.ordinal();
+        }
+        parsed.set(connection, false, OP_BATCH, 0, 0, 0, null).actions = actions;
+        return parsed;
+    }
+
+    @Override
+    public boolean frameReceived(ControlServer.Connection connection, ByteBuffer body) {
+        if (!isRunning) return true;
+        CommandRing ring = (CommandRing) connection.getAttachment();
+        if (ring.refuses()) return false;
+        int opcode = body.get() & 0xFF;
+        int seq = -1;
+        if ((opcode & SEQUENCED) != 0) {
+            opcode &= ~SEQUENCED;
+            if (body.remaining() < 2) {
+                enqueue(ring, parsed.set(connection, true, opcode, 0, 0, 0, "missing sequence number"));
+                return true;
+            }
+            seq = body.getShort() & 0xFFFF;
+        }
+        parseFrame(connection, opcode, body).seq = seq;
+        enqueue(ring, parsed);
+        return true;
+    }
+
+    private Command parseFrame(ControlServer.Connection connection, int opcode, ByteBuffer body) {
+        if (opcode == OP_QUEUE) {
+            int policy = body.hasRemaining() ? body.get() : -1;
+            if (policy < 0 || policy >= CommandRing.Policy.values().length) {
+                return parsed.set(connection, true, opcode, 0, 0, 0, "bad policy");
+            }
+            return setPolicy(connection, true, CommandRing.Policy.values()[policy]);
+        }
+        if (opcode == OP_BATCH) {
+            int count = body.hasRemaining() ? body.get() & 0xFF : -1;
+            if (count <= 0 || body.remaining() < count) {
+                return parsed.set(connection, true, opcode, 0, 0, 0, "bad batch");
+            }
+            byte[] actions = new byte[count];
+            body.get(actions);
+            for (byte action : actions) {
+                if (action < 0 || action >= ACTIONS.length) {
+                    return parsed.set(connection, true, opcode, 0, 0, 0, "bad batch");
+                }
+            }
+            parsed.set(connection, true, opcode, 0, 0, 0, null).actions = actions;
+            return parsed;
+        }
+        int args = opcode == OP_PLACE ? 2 : opcode == OP_PLACE_AT ? 3 : 0;
+        if (body.remaining() < args) {
+            return parsed.set(connection, true, opcode, 0, 0, 0, "missing arguments");
+        }
+        int a = args > 0 ? body.get() : 0;
+        int b = args > 1 ? body.get() : 0;
+        int c = args > 2 ? body.get() : 0;
+        return parsed.set(connection, true, opcode, a, b, c, null);
+    }
+
+    // Takes effect for the commands after this one; the reply is queued as usual
+    private Command setPolicy(ControlServer.Connection connection, boolean binary, CommandRing.Policy policy) {
+        ((CommandRing) connection.getAttachment()).setPolicy(policy);
+        return parsed.set(connection, binary, OP_QUEUE, policy.ordinal(), 0, 0, null);
+    }
+
+    // Queues a parsed command on its connection's ring. A numbered command
+    // that doesn't fit is answered DROPPED right away, ahead of the replies
+    // still queued; unnumbered ones are dropped silently.
+    private void enqueue(CommandRing ring, Command command) {
+        int result = ring.offer(command);
+        if (result == CommandRing.QUEUED) {
+            schedule(ring);
+        } else if (result == CommandRing.DROPPED && command.seq >= 0) {
+            if (command.binary) {
+                dropFrame.clear();
+                dropFrame.putShort((short) 4).put((byte) (command.opcode | SEQUENCED))
+                        .put((byte) STATUS_DROPPED).putShort((short) command.seq);
+                dropFrame.flip();
+                command.connection.send(dropFrame);
+            } else {
+                command.connection.send("#" + command.seq + " DROPPED: Command queue full\n");
+            }
+        }
+    }
+
+    // Puts the ring in line for the command thread unless it already is
+    private void schedule(CommandRing ring) {
+        synchronized (ready) {
+            if (!ring.scheduled) {
+                ring.scheduled = true;
+                ready.add(ring);
+                ready.notify();
+            }
+        }
+    }
+
+    @Override
+    public void disconnected(ControlServer.Connection connection) {
+        CommandRing ring = (CommandRing) connection.getAttachment();
+        synchronized (this) {
+            connections.remove(connection);
+            closedQueued += ring.getQueued();
+            closedDropped += ring.getDropped();
+            closedCoalesced += ring.getCoalesced();
+            closedBlocks += ring.getBlocks();
+        }
+        events.unsubscribe(connection);
+    }
+
+    // Runs one command from each connection with commands waiting, in turn
     private void processCommands() {
         while (isRunning) {
+            CommandRing ring;
             try {
-                String command = commandQueue.take();
-                if (gamePanel != null) {
-                    switch (command) {
-                        // Movement commands
-                        case "LEFT":
-                            if (!gamePanel.isGameOver() && !gamePanel.isPaused()) {
-                                gamePanel.moveLeft();
-                                sendResponse("OK: Moved left");
-                            }
-                            break;
-                        case "RIGHT":
-                            if (!gamePanel.isGameOver() && !gamePanel.isPaused()) {
-                                gamePanel.moveRight();
-                                sendResponse("OK: Moved right");
-                            }
-                            break;
-                        case "DOWN":
-                            if (!gamePanel.isGameOver() && !gamePanel.isPaused()) {
-                                gamePanel.moveDown();
-                                sendResponse("OK: Moved down");
-                            }
-                            break;
-                        case "UP":
-                            if (!gamePanel.isGameOver() && !gamePanel.isPaused()) {
-                                gamePanel.rotate();
-                                sendResponse("OK: Rotated");
-                            }
-                            break;
-                        case "DROP":
-                            if (!gamePanel.isGameOver() && !gamePanel.isPaused()) {
-                                gamePanel.drop();
-                                sendResponse("OK: Dropped");
-                            }
-                            break;
-                            
-                        // Game control commands
-                        case "PAUSE":
-                            gamePanel.togglePause();
-                            sendResponse("OK: Pause toggled");
-                            break;
-                        case "RESET":
-                            gamePanel.resetGame();
-                            sendResponse("OK: Game reset");
-                            break;
-                        case "STATUS":
-                            sendGameStatus();
-                            break;
-                            
-                        // Information commands
-                        case "GET_SCORE":
-                            sendScore();
-                            break;
-                        case "GET_BOARD":
-                            sendBoard();
-                            break;
-                        case "GET_CURRENT_PIECE":
-                            sendCurrentPiece();
-                            break;
-                            
-                        // Extended mode commands
-                        case "GET_POWERUPS":
-                            sendPowerUps();
-                            break;
-                        case "ACTIVATE_POWERUP":
-                            // This would need to be implemented in TetrisPanel
-                            sendResponse("INFO: Power-up activation not yet implemented");
-                            break;
-                            
-                        default:
-                            sendResponse("ERROR: Unknown command: " + command);
+                synchronized (ready) {
+                    while (ready.isEmpty()) {
+                        ready.wait();
                     }
+                    ring = ready.poll();
+                    ring.scheduled = false;
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 break;
             }
+            if (!ring.poll(current)) continue;
+            if (ring.resume()) {
+                ring.connection.resumeReads();
+            }
+            if (!ring.isEmpty()) {
+                schedule(ring);
+            }
+            if (current.connection.isOpen() && gamePanel != null) {
+                execute(current);
+            }
+        }
+    }
+
+    private void execute(Command command) {
+        ControlServer.Connection client = command.connection;
+        if (command.error != null) {
+            reply(command, STATUS_ERROR, command.error);
+            return;
+        }
+        boolean playing = !gamePanel.isGameOver() && !gamePanel.isPaused();
+        switch (command.opcode) {
+            // Movement commands
+            case OP_LEFT:
+                if (playing) gamePanel.moveLeft();
+                reply(command, playing, "OK: Moved left");
+                break;
+            case OP_RIGHT:
+                if (playing) gamePanel.moveRight();
+                reply(command, playing, "OK: Moved right");
+                break;
+            case OP_DOWN:
+                if (playing) gamePanel.moveDown();
+                reply(command, playing, "OK: Moved down");
+                break;
+            case OP_ROTATE:
+                if (playing) gamePanel.rotate();
+                reply(command, playing, "OK: Rotated");
+                break;
+            case OP_DROP:
+                if (playing) gamePanel.drop();
+                reply(command, playing, "OK: Dropped");
+                break;
+            case OP_BATCH:
+                if (!playing) {
+                    reply(command, false, null);
+                } else {
+                    int moved = gamePanel.applyActions(command.actions);
+                    if (command.binary) {
+                        beginFrame(command, STATUS_OK, 1);
+                        frame.put((byte) moved);
+                        sendFrame(client);
+                    } else {
+                        sendResponse(command, "OK: Batch applied, " + moved + " of "
+                                + command.actions.length + " moves changed the piece");
+                    }
+                }
+                break;
+            case OP_PLACE:
+            case OP_PLACE_AT:
+                if (!playing) {
+                    reply(command, false, null);
+                } else {
+                    boolean placed = command.opcode == OP_PLACE
+                            ? gamePanel.placePiece(command.a, command.b)
+                            : gamePanel.placePiece(command.a, command.b, command.c);
+                    if (placed) {
+                        reply(command, STATUS_OK, "OK: Placed");
+                    } else {
+                        reply(command, STATUS_ERROR, "ERROR: Placement not reachable");
+                    }
+                }
+                break;
+
+            // Game control commands
+            case OP_PAUSE:
+                gamePanel.togglePause();
+                reply(command, STATUS_OK, "OK: Pause toggled");
+                break;
+            case OP_RESET:
+                gamePanel.resetGame();
+                reply(command, STATUS_OK, "OK: Game reset");
+                break;
+            case OP_STATUS:
+                if (command.binary) {
+                    beginFrame(command, STATUS_OK, 6);
+                    frame.put((byte) ((gamePanel.isGameOver() ? 1 : 0) | (gamePanel.isPaused() ? 2 : 0)));
+                    frame.put((byte) gamePanel.getCurrentPlayer());
+                    frame.putInt(gamePanel.getGameLevel());
+                    sendFrame(client);
+                } else {
+                    sendGameStatus(command);
+                }
+                break;
+
+            // Information commands
+            case OP_GET_SCORE:
+                if (command.binary) {
+                    beginFrame(command, STATUS_OK, 16);
+                    frame.putInt(gamePanel.getPlayer1Score()).putInt(gamePanel.getPlayer1Lines());
+                    frame.putInt(gamePanel.getPlayer2Score()).putInt(gamePanel.getPlayer2Lines());
+                    sendFrame(client);
+                } else {
+                    sendScore(command);
+                }
+                break;
+            case OP_GET_BOARD:
+                if (command.binary) {
+                    BitBoard board = gamePanel.getBoard();
+                    beginFrame(command, STATUS_OK, 2 + 4 * board.getHeight() + PIECE_BYTES);
+                    frame.put((byte) board.getWidth()).put((byte) board.getHeight());
+                    for (int row = 0; row < board.getHeight(); row++) {
+                        frame.putInt(board.getRow(row));
+                    }
+                    putPiece(frame, gamePanel.getCurrentTetromino());
+                    sendFrame(client);
+                } else {
+                    sendBoard(command);
+                }
+                break;
+            case OP_GET_CURRENT_PIECE:
+                if (command.binary) {
+                    beginFrame(command, STATUS_OK, PIECE_BYTES);
+                    putPiece(frame, gamePanel.getCurrentTetromino());
+                    sendFrame(client);
+                } else {
+                    sendCurrentPiece(command);
+                }
+                break;
+
+            // Extended mode commands
+            case OP_GET_POWERUPS:
+                if (command.binary) {
+                    beginFrame(command, STATUS_OK, 9);
+                    frame.putInt(gamePanel.getScoreMultiplier());
+                    frame.put((byte) (gamePanel.isGravityMode() ? 1 : 0));
+                    frame.putInt(gamePanel.getFreezeTime());
+                    sendFrame(client);
+                } else {
+                    sendPowerUps(command);
+                }
+                break;
+            case OP_ACTIVATE_POWERUP:
+                // This would need to be implemented in TetrisPanel
+                reply(command, STATUS_ERROR, "INFO: Power-up activation not yet implemented");
+                break;
+
+            // Event stream commands; the stream runs on the game thread so a
+            // keyframe can't miss or repeat a change
+            case OP_SUBSCRIBE:
+                reply(command, STATUS_OK, "OK: Subscribed");
+                gamePanel.runOnGameThread(() -> events.subscribe(client));
+                break;
+            case OP_UNSUBSCRIBE:
+                events.unsubscribe(client);
+                reply(command, STATUS_OK, "OK: Unsubscribed");
+                break;
+            case OP_KEYFRAME: {
+                boolean binary = command.binary;
+                int seq = command.seq;
+                gamePanel.runOnGameThread(() -> events.keyframe(client, binary, seq));
+                break;
+            }
+
+            // Queue commands
+            case OP_QUEUE:
+                reply(command, STATUS_OK, "OK: Queue policy " + CommandRing.Policy.values()[command.a]);
+                break;
+            case OP_QUEUE_STATS: {
+                CommandRing ring = (CommandRing) client.getAttachment();
+                if (command.binary) {
+                    beginFrame(command, STATUS_OK, 45);
+                    frame.put((byte) ring.getPolicy().ordinal());
+                    frame.putInt(ring.size()).putInt(ring.capacity()).putInt(ring.getMaxDepth());
+                    frame.putLong(ring.getQueued()).putLong(ring.getDropped());
+                    frame.putLong(ring.getCoalesced()).putLong(ring.getBlocks());
+                    sendFrame(client);
+                } else {
+                    sendResponse(command, "QUEUE: policy=" + ring.getPolicy() + " depth=" + ring.size()
+                            + " capacity=" + ring.capacity() + " max=" + ring.getMaxDepth()
+                            + " queued=" + ring.getQueued() + " dropped=" + ring.getDropped()
+                            + " coalesced=" + ring.getCoalesced() + " blocked=" + ring.getBlocks());
+                }
+                break;
+            }
+
+            case OP_BINARY:
+                sendResponse(command, "OK: Binary protocol " + PROTOCOL_VERSION);
+                break;
+            default:
+                reply(command, STATUS_ERROR, "ERROR: Unknown command: " + command.opcode);
+        }
+    }
+
+    // Acknowledges a move; unsequenced text commands hear nothing when it was
+    // ignored, as before sequence numbers
+    private void reply(Command command, boolean done, String text) {
+        if (done) {
+            reply(command, STATUS_OK, text);
+        } else if (command.binary || command.seq >= 0) {
+            reply(command, STATUS_IGNORED, "IGNORED: Game over or paused");
+        }
+    }
+
+    private void reply(Command command, int status, String text) {
+        if (command.binary) {
+            beginFrame(command, status, 0);
+            sendFrame(command.connection);
+        } else if (text != null) {
+            sendResponse(command, text);
         }
     }
-    
+
+    // Starts a reply frame with room for payload bytes after the header
+    private void beginFrame(Command command, int status, int payload) {
+        if (frame.capacity() < 6 + payload) {
+            frame = ByteBuffer.allocateDirect(6 + payload);
+        }
+        frame.clear();
+        frame.putShort((short) 0);
+        if (command.seq >= 0) {
+            frame.put((byte) (command.opcode | SEQUENCED)).put((byte) status).putShort((short) command.seq);
+        } else {
+            frame.put((byte) command.opcode).put((byte) status);
+        }
+    }
+
+    private void sendFrame(ControlServer.Connection client) {
+        frame.putShort(0, (short) (frame.position() - 2));
+        frame.flip();
+        client.send(frame);
+    }
+
+    // The piece descriptor: type, rotation, row, column, special (0/1) and
+    // power-up (1 + Tetromino.POWER_UPS index, 0 = none), one byte each
+    static void putPiece(ByteBuffer out, Tetromino piece) {
+        if (piece == null) {
+            out.put(new byte[PIECE_BYTES]);
+            return;
+        }
+        out.put((byte) piece.type).put((byte) piece.rotation).put((byte) piece.row).put((byte) piece.col);
+        out.put((byte) (piece.isSpecial ? 1 : 0));
+        int powerUp = 0;
+        for (int i = 0; piece.powerUp != null && i < Tetromino.POWER_UPS.length; i++) {
+            if (Tetromino.POWER_UPS[i].equals(piece.powerUp)) {
+                powerUp = i + 1;
+            }
+        }
+        out.put((byte) powerUp);
+    }
+
+    // Sends a status line to every text connection on this player's port
     public void sendStatus(String status) {
-        if (out != null) {
-            out.println("STATUS: " + status);
-        }
-    }
-    
-    private void sendResponse(String response) {
-        if (out != null) {
-            out.println(response);
-        }
-    }
-    
-    private void sendGameStatus() {
-        if (out != null) {
-            out.println("GAME_STATUS:");
-            out.println("Game Over: " + gamePanel.isGameOver());
-            out.println("Paused: " + gamePanel.isPaused());
-            out.println("Current Player: " + gamePanel.getCurrentPlayer());
-            out.println("Level: " + gamePanel.getGameLevel());
-        }
-    }
-    
-    private void sendScore() {
-        if (out != null) {
-            out.println("SCORES:");
-            out.println("Player 1 Score: " + gamePanel.getPlayer1Score());
-            out.println("Player 1 Lines: " + gamePanel.getPlayer1Lines());
-            out.println("Player 2 Score: " + gamePanel.getPlayer2Score());
-            out.println("Player 2 Lines: " + gamePanel.getPlayer2Lines());
-        }
-    }
-    
-    private void sendBoard() {
-        if (out != null) {
-            out.println("BOARD:");
-            int[][] board = gamePanel.getBoard();
-            for (int[] row : board) {
-                StringBuilder rowStr = new StringBuilder();
-                for (int cell : row) {
-                    rowStr.append(cell).append(" ");
-                }
-                out.println(rowStr.toString().trim());
+        for (ControlServer.Connection connection : connections) {
+            if (!connection.isBinary()) {
+                connection.send("STATUS: " + status + "\n");
             }
         }
     }
-    
-    private void sendCurrentPiece() {
-        if (out != null) {
-            out.println("CURRENT_PIECE:");
-            out.println("Type: " + gamePanel.getCurrentPieceType());
-            out.println("Row: " + gamePanel.getCurrentPieceRow());
-            out.println("Col: " + gamePanel.getCurrentPieceCol());
-            out.println("Is Special: " + gamePanel.isCurrentPieceSpecial());
-            if (gamePanel.getCurrentPiecePowerUp() != null) {
-                out.println("Power-up: " + gamePanel.getCurrentPiecePowerUp());
+
+    private void sendResponse(Command command, String response) {
+        command.connection.send(prefix(command) + response + "\n");
+    }
+
+    // "#<n> " for a sequenced text command
+    private static String prefix(Command command) {
+        return command.seq >= 0 ? "#" + command.seq + " " : "";
+    }
+
+    private void sendGameStatus(Command command) {
+        StringBuilder out = new StringBuilder(prefix(command)).append("GAME_STATUS:\n");
+        out.append("Game Over: ").append(gamePanel.isGameOver()).append('\n');
+        out.append("Paused: ").append(gamePanel.isPaused()).append('\n');
+        out.append("Current Player: ").append(gamePanel.getCurrentPlayer()).append('\n');
+        out.append("Level: ").append(gamePanel.getGameLevel()).append('\n');
+        command.connection.send(out.toString());
+    }
+
+    private void sendScore(Command command) {
+        StringBuilder out = new StringBuilder(prefix(command)).append("SCORES:\n");
+        out.append("Player 1 Score: ").append(gamePanel.getPlayer1Score()).append('\n');
+        out.append("Player 1 Lines: ").append(gamePanel.getPlayer1Lines()).append('\n');
+        out.append("Player 2 Score: ").append(gamePanel.getPlayer2Score()).append('\n');
+        out.append("Player 2 Lines: ").append(gamePanel.getPlayer2Lines()).append('\n');
+        command.connection.send(out.toString());
+    }
+
+    private void sendBoard(Command command) {
+        StringBuilder out = new StringBuilder(prefix(command)).append("BOARD:\n");
+        BitBoard board = gamePanel.getBoard();
+        for (int row = 0; row < board.getHeight(); row++) {
+            for (int col = 0; col < board.getWidth(); col++) {
+                if (col > 0) out.append(' ');
+                out.append(board.getCell(row, col));
             }
+            out.append('\n');
+        }
+        command.connection.send(out.toString());
+    }
+
+    private void sendCurrentPiece(Command command) {
+        StringBuilder out = new StringBuilder(prefix(command)).append("CURRENT_PIECE:\n");
+        out.append("Type: ").append(gamePanel.getCurrentPieceType()).append('\n');
+        out.append("Row: ").append(gamePanel.getCurrentPieceRow()).append('\n');
+        out.append("Col: ").append(gamePanel.getCurrentPieceCol()).append('\n');
+        out.append("Rotation: ").append(gamePanel.getCurrentPieceRotation()).append('\n');
+        out.append("Is Special: ").append(gamePanel.isCurrentPieceSpecial()).append('\n');
+        if (gamePanel.getCurrentPiecePowerUp() != null) {
+            out.append("Power-up: ").append(gamePanel.getCurrentPiecePowerUp()).append('\n');
         }
+        command.connection.send(out.toString());
     }
-    
-    private void sendPowerUps() {
-        if (out != null) {
-            out.println("POWERUPS:");
-            out.println("Available: BOMB, CLEAR_ROW, CLEAR_COL, GRAVITY, FREEZE, MULTIPLIER");
-            out.println("Current Multiplier: " + gamePanel.getScoreMultiplier());
-            out.println("Gravity Mode: " + gamePanel.isGravityMode());
-            out.println("Freeze Time: " + gamePanel.getFreezeTime());
+
+    private void sendPowerUps(Command command) {
+        StringBuilder out = new StringBuilder(prefix(command)).append("POWERUPS:\n");
+        out.append("Available: BOMB, CLEAR_ROW, CLEAR_COL, GRAVITY, FREEZE, MULTIPLIER\n");
+        out.append("Current Multiplier: ").append(gamePanel.getScoreMultiplier()).append('\n');
+        out.append("Gravity Mode: ").append(gamePanel.isGravityMode()).append('\n');
+        out.append("Freeze Time: ").append(gamePanel.getFreezeTime()).append('\n');
+        command.connection.send(out.toString());
+    }
+
+    // A parsed command and the connection it came from; error, when set, is
+    // the reply to a command that couldn't be parsed, and seq is -1 when the
+    // client didn't number it. Holders are reused: the selector thread parses
+    // into one and CommandRing copies it into its arrays, and the command
+    // thread has another that CommandRing.poll() fills.
+    static class Command {
+        ControlServer.Connection connection;
+        boolean binary;
+        int opcode;
+        int a;
+        int b;
+        int c;
+        String error;
+        int seq = -1;
+        byte[] actions; // OP_BATCH moves, as GameEngine.Action ordinals
+
+        Command set(ControlServer.Connection connection, boolean binary, int opcode, int a, int b, int c, String error) {
+            this.connection = connection;
+            this.binary = binary;
+            this.opcode = opcode;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.error = error;
+            this.seq = -1;
+            this.actions = null;
+            return this;
         }
     }
 }
@@ -15,9 +15,30 @@ public class GameConfig {
     private PlayerType player1Type = PlayerType.HUMAN;
     private PlayerType player2Type = PlayerType.HUMAN;
     private int controlledPlayer = 1; // Which player the human controls (1 or 2)
+    private int player1Port = 12345; // TCP port for an EXTERNAL player 1
+    private int player2Port = 12346;
+    private int externalQueueSize = 64; // commands each external connection can have waiting
+    private CommandRing.Policy externalQueuePolicy = CommandRing.Policy.BLOCK; // when that fills up
+    private PieceGenerator.Mode pieceGenerator = PieceGenerator.Mode.UNIFORM;
+    private long pieceSeed = 0; // 0 = new random seed every game
+    private int previewSize = 3;
+    private int aiLookahead = 1; // preview pieces the AI searches beyond the current one
+    private int aiBeamWidth = 8;
+    private int aiNodeBudget = 20000; // placements evaluated per AI decision
+    private int aiDeadlineMargin = 30; // ms an AI decision leaves before the first gravity step
+    private int aiRollouts = 64; // Monte Carlo rollouts per candidate move
+    private int aiRolloutDepth = 8; // pieces played per rollout
+    private boolean aiPlacementCache = false; // reuse decisions for surfaces seen before
+    private String aiPlacementCacheFile = ""; // memory-mapped cache file, "" = in memory only
+    private boolean aiPerfectClear = false; // look for a line that empties a low board
+    private int aiPerfectClearRows = 4; // highest stack the perfect-clear search tries
+    private int aiPerfectClearBudget = 20; // ms per perfect-clear search
+    private String aiWeightsFile = "ai_weights.properties"; // written by AITuner
+    private String aiEvaluatorFile = ""; // learned evaluator; empty uses aiWeightsFile
+    private String aiRecordFile = ""; // decision log for offline analysis, "" = off
     
     public enum PlayerType {
-        HUMAN, AI, EXTERNAL
+        HUMAN, AI, MONTE_CARLO, EXTERNAL
     }
     
     private GameConfig() {
@@ -63,6 +84,69 @@ public class GameConfig {
         }
     }
     
+    public int getPlayer1Port() { return player1Port; }
+    public void setPlayer1Port(int player1Port) { this.player1Port = player1Port; }
+    
+    public int getPlayer2Port() { return player2Port; }
+    public void setPlayer2Port(int player2Port) { this.player2Port = player2Port; }
+    
+    public int getExternalQueueSize() { return externalQueueSize; }
+    public void setExternalQueueSize(int externalQueueSize) { this.externalQueueSize = Math.max(1, externalQueueSize); }
+    
+    public CommandRing.Policy getExternalQueuePolicy() { return externalQueuePolicy; }
+    public void setExternalQueuePolicy(CommandRing.Policy externalQueuePolicy) { this.externalQueuePolicy = externalQueuePolicy; }
+    
+    public PieceGenerator.Mode getPieceGenerator() { return pieceGenerator; }
+    public void setPieceGenerator(PieceGenerator.Mode pieceGenerator) { this.pieceGenerator = pieceGenerator; }
+    
+    public long getPieceSeed() { return pieceSeed; }
+    public void setPieceSeed(long pieceSeed) { this.pieceSeed = pieceSeed; }
+    
+    public int getPreviewSize() { return previewSize; }
+    public void setPreviewSize(int previewSize) { this.previewSize = Math.max(1, previewSize); }
+    
+    public int getAiLookahead() { return aiLookahead; }
+    public void setAiLookahead(int aiLookahead) { this.aiLookahead = Math.max(0, aiLookahead); }
+    
+    public int getAiBeamWidth() { return aiBeamWidth; }
+    public void setAiBeamWidth(int aiBeamWidth) { this.aiBeamWidth = Math.max(1, aiBeamWidth); }
+    
+    public int getAiNodeBudget() { return aiNodeBudget; }
+    public void setAiNodeBudget(int aiNodeBudget) { this.aiNodeBudget = Math.max(1, aiNodeBudget); }
+    
+    public int getAiDeadlineMargin() { return aiDeadlineMargin; }
+    public void setAiDeadlineMargin(int aiDeadlineMargin) { this.aiDeadlineMargin = Math.max(0, aiDeadlineMargin); }
+    
+    public int getAiRollouts() { return aiRollouts; }
+    public void setAiRollouts(int aiRollouts) { this.aiRollouts = Math.max(1, aiRollouts); }
+    
+    public int getAiRolloutDepth() { return aiRolloutDepth; }
+    public void setAiRolloutDepth(int aiRolloutDepth) { this.aiRolloutDepth = Math.max(1, aiRolloutDepth); }
+    
+    public boolean isAiPlacementCache() { return aiPlacementCache; }
+    public void setAiPlacementCache(boolean aiPlacementCache) { this.aiPlacementCache = aiPlacementCache; }
+    
+    public String getAiPlacementCacheFile() { return aiPlacementCacheFile; }
+    public void setAiPlacementCacheFile(String aiPlacementCacheFile) { this.aiPlacementCacheFile = aiPlacementCacheFile; }
+
+    public boolean isAiPerfectClear() { return aiPerfectClear; }
+    public void setAiPerfectClear(boolean aiPerfectClear) { this.aiPerfectClear = aiPerfectClear; }
+
+    public int getAiPerfectClearRows() { return aiPerfectClearRows; }
+    public void setAiPerfectClearRows(int aiPerfectClearRows) { this.aiPerfectClearRows = Math.max(1, aiPerfectClearRows); }
+
+    public int getAiPerfectClearBudget() { return aiPerfectClearBudget; }
+    public void setAiPerfectClearBudget(int aiPerfectClearBudget) { this.aiPerfectClearBudget = Math.max(1, aiPerfectClearBudget); }
+    
+    public String getAiWeightsFile() { return aiWeightsFile; }
+    public void setAiWeightsFile(String aiWeightsFile) { this.aiWeightsFile = aiWeightsFile; }
+
+    public String getAiEvaluatorFile() { return aiEvaluatorFile; }
+    public void setAiEvaluatorFile(String aiEvaluatorFile) { this.aiEvaluatorFile = aiEvaluatorFile; }
+
+    public String getAiRecordFile() { return aiRecordFile; }
+    public void setAiRecordFile(String aiRecordFile) { this.aiRecordFile = aiRecordFile; }
+    
     // Always two-player mode now
     public boolean isTwoPlayerMode() { return true; }
     
@@ -85,6 +169,27 @@ public class GameConfig {
         props.setProperty("player1Type", player1Type.name());
         props.setProperty("player2Type", player2Type.name());
         props.setProperty("controlledPlayer", String.valueOf(controlledPlayer));
+        props.setProperty("player1Port", String.valueOf(player1Port));
+        props.setProperty("player2Port", String.valueOf(player2Port));
+        props.setProperty("externalQueueSize", String.valueOf(externalQueueSize));
+        props.setProperty("externalQueuePolicy", externalQueuePolicy.name());
+        props.setProperty("pieceGenerator", pieceGenerator.name());
+        props.setProperty("pieceSeed", String.valueOf(pieceSeed));
+        props.setProperty("previewSize", String.valueOf(previewSize));
+        props.setProperty("aiLookahead", String.valueOf(aiLookahead));
+        props.setProperty("aiBeamWidth", String.valueOf(aiBeamWidth));
+        props.setProperty("aiNodeBudget", String.valueOf(aiNodeBudget));
+        props.setProperty("aiDeadlineMargin", String.valueOf(aiDeadlineMargin));
+        props.setProperty("aiRollouts", String.valueOf(aiRollouts));
+        props.setProperty("aiRolloutDepth", String.valueOf(aiRolloutDepth));
+        props.setProperty("aiPlacementCache", String.valueOf(aiPlacementCache));
+        props.setProperty("aiPlacementCacheFile", aiPlacementCacheFile);
+        props.setProperty("aiPerfectClear", String.valueOf(aiPerfectClear));
+        props.setProperty("aiPerfectClearRows", String.valueOf(aiPerfectClearRows));
+        props.setProperty("aiPerfectClearBudget", String.valueOf(aiPerfectClearBudget));
+        props.setProperty("aiWeightsFile", aiWeightsFile);
+        props.setProperty("aiEvaluatorFile", aiEvaluatorFile);
+        props.setProperty("aiRecordFile", aiRecordFile);
         
         try (FileOutputStream fos = new FileOutputStream(CONFIG_FILE)) {
             props.store(fos, "Tetris Game Configuration");
@@ -106,6 +211,27 @@ public class GameConfig {
             player1Type = PlayerType.valueOf(props.getProperty("player1Type", "HUMAN"));
             player2Type = PlayerType.valueOf(props.getProperty("player2Type", "HUMAN"));
             controlledPlayer = Integer.parseInt(props.getProperty("controlledPlayer", "1"));
+            player1Port = Integer.parseInt(props.getProperty("player1Port", "12345"));
+            player2Port = Integer.parseInt(props.getProperty("player2Port", "12346"));
+            externalQueueSize = Math.max(1, Integer.parseInt(props.getProperty("externalQueueSize", "64")));
+            externalQueuePolicy = CommandRing.Policy.valueOf(props.getProperty("externalQueuePolicy", "BLOCK"));
+            pieceGenerator = PieceGenerator.Mode.valueOf(props.getProperty("pieceGenerator", "UNIFORM"));
+            pieceSeed = Long.parseLong(props.getProperty("pieceSeed", "0"));
+            previewSize = Math.max(1, Integer.parseInt(props.getProperty("previewSize", "3")));
+            aiLookahead = Math.max(0, Integer.parseInt(props.getProperty("aiLookahead", "1")));
+            aiBeamWidth = Math.max(1, Integer.parseInt(props.getProperty("aiBeamWidth", "8")));
+            aiNodeBudget = Math.max(1, Integer.parseInt(props.getProperty("aiNodeBudget", "20000")));
+            aiDeadlineMargin = Math.max(0, Integer.parseInt(props.getProperty("aiDeadlineMargin", "30")));
+            aiRollouts = Math.max(1, Integer.parseInt(props.getProperty("aiRollouts", "64")));
+            aiRolloutDepth = Math.max(1, Integer.parseInt(props.getProperty("aiRolloutDepth", "8")));
+            aiPlacementCache = Boolean.parseBoolean(props.getProperty("aiPlacementCache", "false"));
+            aiPlacementCacheFile = props.getProperty("aiPlacementCacheFile", "");
+            aiPerfectClear = Boolean.parseBoolean(props.getProperty("aiPerfectClear", "false"));
+            aiPerfectClearRows = Math.max(1, Integer.parseInt(props.getProperty("aiPerfectClearRows", "4")));
+            aiPerfectClearBudget = Math.max(1, Integer.parseInt(props.getProperty("aiPerfectClearBudget", "20")));
+            aiWeightsFile = props.getProperty("aiWeightsFile", "ai_weights.properties");
+            aiEvaluatorFile = props.getProperty("aiEvaluatorFile", "");
+            aiRecordFile = props.getProperty("aiRecordFile", "");
         } catch (IOException e) {
             // Use default values if config file doesn't exist
             System.out.println("Using default configuration");
@@ -0,0 +1,423 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Swing-free game rules. TetrisPanel drives it from a Swing Timer and renders
+// its state; headless runs call step() / applyAction() directly.
+public class GameEngine {
+    public enum Action {
+        LEFT, RIGHT, DOWN, ROTATE, DROP
+    }
+
+    // Callbacks for anything that reacts to the game (sound, UI, bots)
+    public interface Listener {
+        default void pieceSpawned(Tetromino piece) {}
+        default void pieceMoved(Tetromino piece) {}
+        default void pieceFell(Tetromino piece) {} // moved down by gravity, DOWN or DROP
+        default void pieceRotated(Tetromino piece) {}
+        default void piecePlaced(int linesCleared) {}
+        default void powerUpActivated(String powerUp) {}
+        default void gameOver() {}
+    }
+
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int gameLevel;
+    private final boolean extendedMode;
+    private final BitBoard board;
+    private final PieceGenerator generator;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private Tetromino current;
+    private MoveGenerator moveGenerator; // created on first tuck/spin placement
+    private int[] rows;
+    private boolean gameOver = false;
+    private int score = 0;
+    private int linesCleared = 0;
+    private int piecesPlaced = 0;
+
+    // Two-player mode variables
+    private int currentPlayer = 1; // 1 or 2
+    private int player1Score = 0;
+    private int player2Score = 0;
+    private int player1Lines = 0;
+    private int player2Lines = 0;
+
+    // Extended mode power-up variables
+    private int scoreMultiplier = 1;
+    private boolean gravityMode = false;
+    private int freezeTime = 0;
+
+    public GameEngine(int boardWidth, int boardHeight, int gameLevel, PieceGenerator generator) {
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.gameLevel = gameLevel;
+        this.extendedMode = generator.isExtendedMode();
+        this.generator = generator;
+        this.board = new BitBoard(boardWidth, boardHeight);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Spawn the first piece; call after listeners are registered
+    public void start() {
+        if (current == null && !gameOver) {
+            spawnTetromino();
+        }
+    }
+
+    // Delay between gravity steps for the configured level
+    public int getDropInterval() {
+        int baseDelay = 500;
+        return Math.max(100, baseDelay - (gameLevel - 1) * 40);
+    }
+
+    // One gravity tick. Returns true if the current piece locked.
+    public boolean step() {
+        if (gameOver || current == null)
+            return false;
+
+        // Handle freeze mode
+        if (freezeTime > 0) {
+            freezeTime--;
+            return false;
+        }
+
+        // Try to move down
+        if (canMove(current.masks(), current.row + 1, current.col)) {
+            current.row++;
+            for (Listener listener : listeners) {
+                listener.pieceFell(current);
+            }
+            return false;
+        }
+
+        // Can't move down, place the tetromino
+        lockTetromino();
+        return true;
+    }
+
+    // Apply a single player input. Returns true if the piece changed position.
+    public boolean applyAction(Action action) {
+        if (gameOver || current == null)
+            return false;
+
+        switch (action) {
+            case LEFT:
+                return shift(-1);
+            case RIGHT:
+                return shift(1);
+            case DOWN:
+                if (canMove(current.masks(), current.row + 1, current.col)) {
+                    current.row++;
+                    for (Listener listener : listeners) {
+                        listener.pieceFell(current);
+                    }
+                    return true;
+                }
+                return false;
+            case ROTATE:
+                int rotation = Tetromino.nextRotation(current.rotation);
+                if (canMove(Tetromino.masks(current.type, rotation), current.row, current.col)) {
+                    current.rotation = rotation;
+                    for (Listener listener : listeners) {
+                        listener.pieceRotated(current);
+                    }
+                    return true;
+                }
+                return false;
+            case DROP:
+                boolean moved = false;
+                while (canMove(current.masks(), current.row + 1, current.col)) {
+                    current.row++;
+                    moved = true;
+                }
+                if (moved) {
+                    for (Listener listener : listeners) {
+                        listener.pieceFell(current);
+                    }
+                }
+                return moved;
+            default:
+                return false;
+        }
+    }
+
+    // Moves the current piece to an absolute rotation and column along the path the
+    // ROTATE, LEFT/RIGHT and DROP inputs would take, then locks it. The path is
+    // checked once up front; if any step is blocked the piece is left untouched.
+    public boolean placePiece(int rotation, int column) {
+        if (gameOver || current == null)
+            return false;
+
+        int type = current.type;
+        int rot = current.rotation;
+        int row = current.row;
+        int col = current.col;
+        int target = rotation & 3;
+        while (rot != target) {
+            rot = Tetromino.nextRotation(rot);
+            if (!canMove(Tetromino.masks(type, rot), row, col)) {
+                return false;
+            }
+        }
+        int[] masks = Tetromino.masks(type, rot);
+        int step = column > col ? 1 : -1;
+        while (col != column) {
+            col += step;
+            if (!canMove(masks, row, col)) {
+                return false;
+            }
+        }
+        while (canMove(masks, row + 1, col)) {
+            row++;
+        }
+
+        current.rotation = rot;
+        current.col = col;
+        current.row = row;
+        lockTetromino();
+        return true;
+    }
+
+    // Locks the current piece at any reachable resting spot, including tucks and
+    // spins a straight drop can't get to. Returns false if it can't get there.
+    public boolean placePiece(int rotation, int row, int col) {
+        if (gameOver || current == null)
+            return false;
+
+        if (moveGenerator == null) {
+            moveGenerator = new MoveGenerator(boardWidth, boardHeight);
+            rows = new int[boardHeight];
+        }
+        board.copyRowsTo(rows);
+        moveGenerator.generate(rows, current.type, current.rotation, current.row, current.col);
+        int found = moveGenerator.find(current.type, rotation, row, col);
+        if (found < 0) {
+            return false;
+        }
+
+        current.rotation = moveGenerator.getRotation(found);
+        current.row = moveGenerator.getRow(found);
+        current.col = moveGenerator.getCol(found);
+        lockTetromino();
+        return true;
+    }
+
+    private boolean shift(int dc) {
+        if (canMove(current.masks(), current.row, current.col + dc)) {
+            current.col += dc;
+            for (Listener listener : listeners) {
+                listener.pieceMoved(current);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void spawnTetromino() {
+        current = Tetromino.next(generator, boardWidth);
+        // Check if the new tetromino can be placed at its starting position
+        if (!canMove(current.masks(), current.row, current.col)) {
+            gameOver = true;
+            for (Listener listener : listeners) {
+                listener.gameOver();
+            }
+            return;
+        }
+        for (Listener listener : listeners) {
+            listener.pieceSpawned(current);
+        }
+    }
+
+    private void lockTetromino() {
+        placeTetromino();
+        piecesPlaced++;
+        int linesClearedThisTurn = eraseRows();
+        if (linesClearedThisTurn > 0) {
+            // Two-player mode scoring with multiplier
+            int baseScore = linesClearedThisTurn * 100 * gameLevel * scoreMultiplier;
+            if (currentPlayer == 1) {
+                player1Lines += linesClearedThisTurn;
+                player1Score += baseScore;
+            } else {
+                player2Lines += linesClearedThisTurn;
+                player2Score += baseScore;
+            }
+
+            // Reduce multiplier over time
+            if (scoreMultiplier > 1) {
+                scoreMultiplier = Math.max(1, scoreMultiplier - 1);
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.piecePlaced(linesClearedThisTurn);
+        }
+        spawnTetromino();
+    }
+
+    private void placeTetromino() {
+        // Handle power-up activation
+        if (current.isSpecial && current.powerUp != null) {
+            activatePowerUp(current.powerUp);
+        }
+
+        // Power-ups may have cleared cells under the piece, never added any
+        board.place(current.masks(), current.row, current.col, current.type);
+    }
+
+    private void activatePowerUp(String powerUp) {
+        switch (powerUp) {
+            case "BOMB":
+                // Clear a 3x3 area around the placed piece
+                clearBombArea();
+                break;
+            case "CLEAR_ROW":
+                // Clear the row where the piece was placed
+                clearRow(current.row);
+                break;
+            case "CLEAR_COL":
+                // Clear the column where the piece was placed
+                clearColumn(current.col);
+                break;
+            case "GRAVITY":
+                // Enable gravity mode for 10 seconds
+                gravityMode = true;
+                break;
+            case "FREEZE":
+                // Freeze the game for 5 seconds
+                freezeTime = 5;
+                break;
+            case "MULTIPLIER":
+                // Double score multiplier for next 5 pieces
+                scoreMultiplier = Math.min(scoreMultiplier * 2, 8);
+                break;
+        }
+
+        for (Listener listener : listeners) {
+            listener.powerUpActivated(powerUp);
+        }
+    }
+
+    private void clearBombArea() {
+        int centerRow = current.row + current.height() / 2;
+        int centerCol = current.col + current.width() / 2;
+
+        board.clearArea(Math.max(0, centerRow - 1), Math.min(boardHeight - 1, centerRow + 1),
+                Math.max(0, centerCol - 1), Math.min(boardWidth - 1, centerCol + 1));
+    }
+
+    private void clearRow(int row) {
+        if (row >= 0 && row < boardHeight) {
+            board.clearArea(row, row, 0, boardWidth - 1);
+        }
+    }
+
+    private void clearColumn(int col) {
+        if (col >= 0 && col < boardWidth) {
+            board.clearArea(0, boardHeight - 1, col, col);
+        }
+    }
+
+    private int eraseRows() {
+        return board.clearFullRows();
+    }
+
+    public boolean canMove(int[] masks, int row, int col) {
+        return board.fits(masks, row, col);
+    }
+
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    // Used when the game is stopped from outside (menu, window close)
+    public void endGame() {
+        gameOver = true;
+    }
+
+    public Tetromino getCurrentTetromino() {
+        return current;
+    }
+
+    // Type of an upcoming piece, 0 = the one after the current piece
+    public int getPreview(int i) {
+        return generator.peek(i);
+    }
+
+    public int getPreviewSize() {
+        return generator.getPreviewSize();
+    }
+
+    public long getSeed() {
+        return generator.getSeed();
+    }
+
+    public BitBoard getBoard() {
+        return board;
+    }
+
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+
+    public int getGameLevel() {
+        return gameLevel;
+    }
+
+    public boolean isExtendedMode() {
+        return extendedMode;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getLinesCleared() {
+        return linesCleared;
+    }
+
+    public int getPiecesPlaced() {
+        return piecesPlaced;
+    }
+
+    public int getCurrentPlayer() {
+        return currentPlayer;
+    }
+
+    public int getPlayer1Score() {
+        return player1Score;
+    }
+
+    public int getPlayer1Lines() {
+        return player1Lines;
+    }
+
+    public int getPlayer2Score() {
+        return player2Score;
+    }
+
+    public int getPlayer2Lines() {
+        return player2Lines;
+    }
+
+    public int getScoreMultiplier() {
+        return scoreMultiplier;
+    }
+
+    public boolean isGravityMode() {
+        return gravityMode;
+    }
+
+    public int getFreezeTime() {
+        return freezeTime;
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Random;
+
+// Runs games without a display to measure engine and AI throughput.
+// Usage: java HeadlessRunner [games] [width] [height] [seed] [random|ai|anytime|rollout|perfectclear] [level]
+// Game i uses piece seed (seed + i), so runs with the same arguments replay exactly.
+// "anytime" gives the AI the same per-piece deadline it has on screen at that level.
+public class HeadlessRunner {
+    private static final int MAX_AI_PIECES = 2000; // AI games can run forever
+
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        String policyName = args.length > 4 ? args[4] : "random";
+        boolean anytime = policyName.equalsIgnoreCase("anytime");
+        boolean rollout = policyName.equalsIgnoreCase("rollout");
+        boolean perfectClear = policyName.equalsIgnoreCase("perfectclear");
+        boolean useAI = anytime || rollout || perfectClear || policyName.equalsIgnoreCase("ai");
+        int level = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+
+        GameEngine.Action[] actions = GameEngine.Action.values();
+        Random policy = new Random(42);
+        long totalPieces = 0;
+        long totalLines = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < games; i++) {
+            PieceGenerator generator = new PieceGenerator(PieceGenerator.Mode.BAG, false, seed + i, 3);
+            GameEngine engine = new GameEngine(width, height, level, generator);
+            engine.start();
+            if (useAI) {
+                AIPlayer ai = new AIPlayer(engine);
+                ai.setUseDeadline(anytime);
+                if (rollout) {
+                    ai.setStrategy(AIPlayer.Strategy.ROLLOUT);
+                }
+                if (perfectClear) {
+                    ai.setPerfectClear(true);
+                }
+                while (engine.getPiecesPlaced() < MAX_AI_PIECES && ai.playPiece()) {
+                    // Keep placing until game over or the piece cap
+                }
+                if (i == games - 1) {
+                    System.out.println("AI search: " + ai.getSearchStats());
+                }
+            } else {
+                while (!engine.isGameOver()) {
+                    engine.applyAction(actions[policy.nextInt(actions.length)]);
+                    engine.step();
+                }
+            }
+            totalPieces += engine.getPiecesPlaced();
+            totalLines += engine.getPlayer1Lines();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d pieces, %d lines in %.2fs (%.0f games/s, %.0f pieces/s)%n",
+                games, totalPieces, totalLines, seconds, games / seconds, totalPieces / seconds);
+    }
+}
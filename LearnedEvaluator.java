@@ -0,0 +1,198 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+// Evaluator with weights loaded from a file: either linear (hidden=0) or a
+// multilayer perceptron with one ReLU hidden layer. A batch is scored one
+// layer at a time, each weight applied across every board in a flat loop.
+// File format (properties, comma-separated floats):
+//   hidden=<units>       0 for a linear model
+//   inputScale=<f0,...>  optional per-feature multiplier, in BoardEvaluator order
+//   w1=<...>             hidden x features, one hidden unit after another
+//   b1=<...>             hidden
+//   w2=<...>             hidden (or features when linear)
+//   b2=<bias>
+public class LearnedEvaluator implements BoardEvaluator {
+    private static final int F = FEATURE_COUNT;
+    // Hidden activations for the batch in progress, per search thread
+    private static final ThreadLocal<float[]> HIDDEN = ThreadLocal.withInitial(() -> new float[0]);
+
+    private static LearnedEvaluator loaded;
+    private static String loadedFile;
+
+    private final int hidden;
+    private final float[] inputScale;
+    private final float[] w1;
+    private final float[] b1;
+    private final float[] w2;
+    private final float b2;
+    // Weights with inputScale folded in, used for scoring
+    private final float[] scaledW1;
+    private final float[] scaledW2;
+
+    public LearnedEvaluator(int hidden, float[] inputScale, float[] w1, float[] b1, float[] w2, float b2) {
+        int outputInputs = hidden == 0 ? F : hidden;
+        if (hidden < 0 || inputScale.length != F || w1.length != hidden * F || b1.length != hidden
+                || w2.length != outputInputs) {
+            throw new IllegalArgumentException("Weight sizes don't match " + hidden + " hidden units and " + F + " features");
+        }
+        this.hidden = hidden;
+        this.inputScale = inputScale.clone();
+        this.w1 = w1.clone();
+        this.b1 = b1.clone();
+        this.w2 = w2.clone();
+        this.b2 = b2;
+        this.scaledW1 = new float[w1.length];
+        for (int j = 0; j < hidden; j++) {
+            for (int f = 0; f < F; f++) {
+                scaledW1[j * F + f] = w1[j * F + f] * inputScale[f];
+            }
+        }
+        this.scaledW2 = w2.clone();
+        if (hidden == 0) {
+            for (int f = 0; f < F; f++) {
+                scaledW2[f] *= inputScale[f];
+            }
+        }
+    }
+
+    // Linear model over unscaled features
+    public static LearnedEvaluator linear(float[] weights, float bias) {
+        float[] ones = new float[F];
+        Arrays.fill(ones, 1f);
+        return new LearnedEvaluator(0, ones, new float[0], new float[0], weights, bias);
+    }
+
+    // Evaluator from the file named by GameConfig's aiEvaluatorFile, or null if
+    // none is configured or it can't be read
+    public static synchronized LearnedEvaluator getDefault() {
+        String fileName = GameConfig.getInstance().getAiEvaluatorFile();
+        if (fileName == null || fileName.isEmpty()) {
+            return null;
+        }
+        if (!fileName.equals(loadedFile)) {
+            loaded = load(fileName);
+            loadedFile = fileName;
+        }
+        return loaded;
+    }
+
+    public static LearnedEvaluator load(String fileName) {
+        if (!new File(fileName).exists()) {
+            System.err.println("AI evaluator file not found: " + fileName);
+            return null;
+        }
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(fileName)) {
+            props.load(fis);
+            int hidden = Integer.parseInt(props.getProperty("hidden", "0").trim());
+            float[] inputScale = parse(props.getProperty("inputScale", ""));
+            if (inputScale.length == 0) {
+                inputScale = new float[F];
+                Arrays.fill(inputScale, 1f);
+            }
+            LearnedEvaluator evaluator = new LearnedEvaluator(hidden, inputScale,
+                    parse(props.getProperty("w1", "")), parse(props.getProperty("b1", "")),
+                    parse(props.getProperty("w2", "")), Float.parseFloat(props.getProperty("b2", "0").trim()));
+            System.out.println("Loaded AI evaluator from " + fileName + " (" + evaluator.describe() + ")");
+            return evaluator;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Failed to load AI evaluator: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void save(String fileName, String comment) {
+        Properties props = new Properties();
+        props.setProperty("hidden", String.valueOf(hidden));
+        props.setProperty("inputScale", join(inputScale));
+        props.setProperty("w1", join(w1));
+        props.setProperty("b1", join(b1));
+        props.setProperty("w2", join(w2));
+        props.setProperty("b2", String.valueOf(b2));
+        try (FileOutputStream fos = new FileOutputStream(fileName)) {
+            props.store(fos, comment);
+        } catch (IOException e) {
+            System.err.println("Failed to save AI evaluator: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void score(float[] features, int stride, int count, float[] scores) {
+        Arrays.fill(scores, 0, count, b2);
+        if (hidden == 0) {
+            for (int f = 0; f < F; f++) {
+                float w = scaledW2[f];
+                int base = f * stride;
+                for (int i = 0; i < count; i++) {
+                    scores[i] += w * features[base + i];
+                }
+            }
+            return;
+        }
+
+        float[] h = HIDDEN.get();
+        if (h.length < hidden * count) {
+            h = new float[hidden * count];
+            HIDDEN.set(h);
+        }
+        for (int j = 0; j < hidden; j++) {
+            int out = j * count;
+            Arrays.fill(h, out, out + count, b1[j]);
+            for (int f = 0; f < F; f++) {
+                float w = scaledW1[j * F + f];
+                int base = f * stride;
+                for (int i = 0; i < count; i++) {
+                    h[out + i] += w * features[base + i];
+                }
+            }
+            float w = scaledW2[j];
+            for (int i = 0; i < count; i++) {
+                scores[i] += w * Math.max(h[out + i], 0f);
+            }
+        }
+    }
+
+    @Override
+    public long fingerprint() {
+        long hash = hidden;
+        hash = hash * 31 + Arrays.hashCode(inputScale);
+        hash = hash * 31 + Arrays.hashCode(w1);
+        hash = hash * 31 + Arrays.hashCode(b1);
+        hash = hash * 31 + Arrays.hashCode(w2);
+        return hash * 31 + Float.floatToIntBits(b2);
+    }
+
+    public int getHiddenUnits() {
+        return hidden;
+    }
+
+    public String describe() {
+        return hidden == 0 ? "linear" : hidden + " hidden units";
+    }
+
+    private static float[] parse(String text) {
+        text = text.trim();
+        if (text.isEmpty()) {
+            return new float[0];
+        }
+        String[] parts = text.split(",");
+        float[] values = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Float.parseFloat(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static String join(float[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+}
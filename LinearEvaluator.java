@@ -0,0 +1,34 @@
+import java.util.Arrays;
+
+// The hand-weighted evaluation: a weighted sum of the board features using
+// AIWeights. This is what the AI uses unless a learned evaluator is configured.
+public class LinearEvaluator implements BoardEvaluator {
+    private final float[] weights = new float[FEATURE_COUNT];
+
+    public LinearEvaluator(AIWeights aiWeights) {
+        weights[HOLES] = aiWeights.get(AIWeights.HOLES);
+        weights[MAX_HEIGHT] = aiWeights.get(AIWeights.MAX_HEIGHT);
+        weights[BUMPINESS] = aiWeights.get(AIWeights.BUMPINESS);
+        weights[GAPS] = aiWeights.get(AIWeights.GAPS);
+        weights[NEAR_FULL_CELLS] = aiWeights.get(AIWeights.NEAR_FULL_CELLS);
+        weights[WELLS] = aiWeights.get(AIWeights.WELLS);
+        weights[ROW_TRANSITIONS] = aiWeights.get(AIWeights.ROW_TRANSITIONS);
+    }
+
+    @Override
+    public void score(float[] features, int stride, int count, float[] scores) {
+        Arrays.fill(scores, 0, count, 0f);
+        for (int f = 0; f < FEATURE_COUNT; f++) {
+            float w = weights[f];
+            int base = f * stride;
+            for (int i = 0; i < count; i++) {
+                scores[i] += w * features[base + i];
+            }
+        }
+    }
+
+    @Override
+    public long fingerprint() {
+        return Arrays.hashCode(weights);
+    }
+}
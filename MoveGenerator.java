@@ -0,0 +1,188 @@
+import java.util.Arrays;
+
+// Breadth-first search over (rotation, row, col) states of one piece, using the
+// engine's movement rules: LEFT, RIGHT, DOWN and clockwise ROTATE with no kicks.
+// Finds every resting placement the piece can reach from where it is, including
+// tucks under overhangs and spins, along with the inputs that get it there.
+// Gravity is ignored, i.e. inputs are assumed to be faster than the drop timer.
+// All buffers are sized once per board, so generate() allocates nothing.
+public class MoveGenerator {
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+    // Lowest rotation with the same cells, per [type-1][rotation]
+    private static final int[][] CANONICAL = new int[Tetromino.TYPE_COUNT][4];
+    private static final int[] MAX_HEIGHT = new int[Tetromino.TYPE_COUNT];
+
+    static {
+        for (int type = 1; type <= Tetromino.TYPE_COUNT; type++) {
+            for (int rot = 0; rot < 4; rot++) {
+                int canonical = rot;
+                for (int other = 0; other < rot; other++) {
+                    if (Arrays.equals(Tetromino.masks(type, other), Tetromino.masks(type, rot))) {
+                        canonical = other;
+                        break;
+                    }
+                }
+                CANONICAL[type - 1][rot] = canonical;
+                MAX_HEIGHT[type - 1] = Math.max(MAX_HEIGHT[type - 1], Tetromino.height(type, rot));
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final long[] visited;  // bitset over state indexes
+    private final long[] landed;   // bitset over canonical resting states
+    private final int[] queue;
+    private final int[] parent;    // state a state was first reached from
+    private final byte[] via;      // Action ordinal that reached it
+
+    // Resting placements of the last generate() call, in discovery order
+    private final int[] resultState;
+    private int resultCount;
+    private int skippedRows; // straight DOWN moves taken before the search started
+
+    public MoveGenerator(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int states = 4 * width * height;
+        visited = new long[(states + 63) >>> 6];
+        landed = new long[visited.length];
+        queue = new int[states];
+        parent = new int[states];
+        via = new byte[states];
+        resultState = new int[states];
+    }
+
+    // Searches from the piece at (rotation, row, col) on a board of row masks.
+    // Returns the number of distinct resting placements found.
+    public int generate(int[] rows, int type, int rotation, int row, int col) {
+        Arrays.fill(visited, 0);
+        Arrays.fill(landed, 0);
+        resultCount = 0;
+        skippedRows = 0;
+        if (!fits(rows, Tetromino.masks(type, rotation), row, col)) {
+            return 0;
+        }
+
+        // Above the stack only the walls matter and every move commutes with DOWN,
+        // so start the search where the piece could first touch anything
+        int top = 0;
+        while (top < height && rows[top] == 0) {
+            top++;
+        }
+        if (top - MAX_HEIGHT[type - 1] > row) {
+            skippedRows = top - MAX_HEIGHT[type - 1] - row;
+            row += skippedRows;
+        }
+
+        int start = state(rotation, row, col);
+        visited[start >>> 6] |= 1L << start;
+        parent[start] = -1;
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int s = queue[head++];
+            int c = s % width;
+            int r = (s / width) % height;
+            int rot = s / (width * height);
+            int[] masks = Tetromino.masks(type, rot);
+
+            if (fits(rows, masks, r + 1, c)) {
+                tail = visit(rows, masks, rot, r + 1, c, s, GameEngine.Action.DOWN, tail);
+            } else {
+                // Resting here; rotations with the same cells count once
+                int rest = state(CANONICAL[type - 1][rot], r, c);
+                if ((landed[rest >>> 6] & (1L << rest)) == 0) {
+                    landed[rest >>> 6] |= 1L << rest;
+                    resultState[resultCount++] = s;
+                }
+            }
+            tail = visit(rows, masks, rot, r, c - 1, s, GameEngine.Action.LEFT, tail);
+            tail = visit(rows, masks, rot, r, c + 1, s, GameEngine.Action.RIGHT, tail);
+            int next = Tetromino.nextRotation(rot);
+            tail = visit(rows, Tetromino.masks(type, next), next, r, c, s, GameEngine.Action.ROTATE, tail);
+        }
+        return resultCount;
+    }
+
+    private int visit(int[] rows, int[] masks, int rot, int row, int col, int from, GameEngine.Action action, int tail) {
+        if (row < 0 || col < 0 || row >= height || col >= width) {
+            return tail;
+        }
+        int s = state(rot, row, col);
+        if ((visited[s >>> 6] & (1L << s)) != 0 || !fits(rows, masks, row, col)) {
+            return tail;
+        }
+        visited[s >>> 6] |= 1L << s;
+        parent[s] = from;
+        via[s] = (byte) action.ordinal();
+        queue[tail] = s;
+        return tail + 1;
+    }
+
+    // Pieces have no empty border rows or columns, so bounds only need the extent
+    private boolean fits(int[] rows, int[] masks, int row, int col) {
+        if (row < 0 || col < 0 || row + masks.length > height) {
+            return false;
+        }
+        long limit = 1L << (width - col);
+        for (int r = 0; r < masks.length; r++) {
+            int m = masks[r];
+            if (m >= limit || (rows[row + r] & (m << col)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int state(int rotation, int row, int col) {
+        return (rotation * height + row) * width + col;
+    }
+
+    public int getCount() {
+        return resultCount;
+    }
+
+    public int getRotation(int i) {
+        return resultState[i] / (width * height);
+    }
+
+    public int getRow(int i) {
+        return (resultState[i] / width) % height;
+    }
+
+    public int getCol(int i) {
+        return resultState[i] % width;
+    }
+
+    // Index of the placement covering the same cells as (rotation, row, col), -1 if unreachable
+    public int find(int type, int rotation, int row, int col) {
+        int canonical = CANONICAL[type - 1][rotation & 3];
+        for (int i = 0; i < resultCount; i++) {
+            if (getRow(i) == row && getCol(i) == col && CANONICAL[type - 1][getRotation(i)] == canonical) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Writes an input sequence reaching placement i into out and returns its
+    // length; out needs room for 4 * width * height + height actions.
+    public int path(int i, GameEngine.Action[] out) {
+        int length = 0;
+        for (int s = resultState[i]; parent[s] >= 0; s = parent[s]) {
+            out[length++] = ACTIONS[via[s]];
+        }
+        for (int j = 0; j < skippedRows; j++) {
+            out[length++] = GameEngine.Action.DOWN;
+        }
+        for (int a = 0, b = length - 1; a < b; a++, b--) {
+            GameEngine.Action tmp = out[a];
+            out[a] = out[b];
+            out[b] = tmp;
+        }
+        return length;
+    }
+}
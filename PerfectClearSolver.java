@@ -0,0 +1,321 @@
+import java.util.Arrays;
+
+// Depth-first search for a perfect clear: placements of the known pieces (the
+// current one and the preview) that leave the board empty. A target of H rows
+// fixes how many pieces are needed, since their cells must fill exactly the
+// empty cells of the bottom H rows, and every piece has to land inside those
+// rows. Branches are cut when
+//   - the cells left of a filled column can't be made up of whole pieces, or
+//   - the even/odd column balance of the empty cells can't be matched by the
+//     pieces left (a vertical I covers 4 cells of one parity, L and J always
+//     cover 3 of one and 1 of the other, and so on)
+// and positions that already failed are remembered in a fixed-size table keyed
+// by the rows and the piece index. All buffers are sized once, so solve()
+// allocates nothing.
+public class PerfectClearSolver {
+    private static final int MAX_PIECES = 12;
+    private static final int MEMO_BITS = 16;
+    private static final int CHECK_MASK = 255; // check the clock every 256 nodes
+    private static final int MAX_CELLS = 5;
+    private static final int BALANCE_OFFSET = MAX_PIECES * MAX_CELLS;
+
+    // Cells per piece type, and the column balances (even minus odd column
+    // cells) a piece can have over its rotations and both column parities
+    private static final int[] CELLS = new int[Tetromino.TYPE_COUNT];
+    private static final int[][] BALANCES = new int[Tetromino.TYPE_COUNT][];
+
+    static {
+        for (int type = 1; type <= Tetromino.TYPE_COUNT; type++) {
+            boolean[] seen = new boolean[2 * MAX_CELLS + 1];
+            int count = 0;
+            for (int rot = 0; rot < Tetromino.rotationCount(type); rot++) {
+                int cells = 0;
+                int balance = 0;
+                for (int mask : Tetromino.masks(type, rot)) {
+                    cells += Integer.bitCount(mask);
+                    balance += Integer.bitCount(mask & 0x55555555) - Integer.bitCount(mask & 0xAAAAAAAA);
+                }
+                CELLS[type - 1] = cells;
+                for (int sign = -1; sign <= 1; sign += 2) {
+                    if (!seen[MAX_CELLS + sign * balance]) {
+                        seen[MAX_CELLS + sign * balance] = true;
+                        count++;
+                    }
+                }
+            }
+            BALANCES[type - 1] = new int[count];
+            for (int v = -MAX_CELLS, i = 0; v <= MAX_CELLS; v++) {
+                if (seen[MAX_CELLS + v]) {
+                    BALANCES[type - 1][i++] = v;
+                }
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int fullMask;
+    private final int maxRows;
+    private final MoveGenerator generator;
+
+    // Search state by depth: the board before each piece and its candidate placements
+    private final int[][] boards;
+    private final int[][] candRotation;
+    private final int[][] candRow;
+    private final int[][] candCol;
+    private final int[] pieces = new int[MAX_PIECES];
+    private int pieceCount; // pieces the current target needs
+    private int startRotation;
+    private int startRow;
+    private int startCol;
+    // Feasible column balances of pieces [d, pieceCount), offset by BALANCE_OFFSET
+    private final boolean[][] balanceReach = new boolean[MAX_PIECES + 1][2 * BALANCE_OFFSET + 1];
+    private final int[] cellGcd = new int[MAX_PIECES + 1];
+
+    // Failed positions; an entry counts only if stamped by the current solve
+    private final long[] memoKeys = new long[1 << MEMO_BITS];
+    private final int[] memoStamps = new int[1 << MEMO_BITS];
+    private int stamp;
+
+    private final int[] solutionRotation = new int[MAX_PIECES];
+    private final int[] solutionRow = new int[MAX_PIECES];
+    private final int[] solutionCol = new int[MAX_PIECES];
+    private int solutionLength;
+
+    private long deadline;
+    private boolean timedOut;
+    private long nodes;
+
+    // Statistics
+    private long solves;
+    private long solutions;
+    private long timeouts;
+    private long totalNodes;
+
+    // maxRows is the highest stack the solver tries to clear
+    public PerfectClearSolver(int width, int height, int maxRows) {
+        this.width = width;
+        this.height = height;
+        this.fullMask = BitBoard.fullMask(width);
+        this.maxRows = Math.min(maxRows, height);
+        this.generator = new MoveGenerator(width, height);
+        int states = 4 * width * height;
+        boards = new int[MAX_PIECES + 1][height];
+        candRotation = new int[MAX_PIECES][states];
+        candRow = new int[MAX_PIECES][states];
+        candCol = new int[MAX_PIECES][states];
+    }
+
+    // Searches for a perfect clear using types[0..count): the first piece starts
+    // at (rotation, row, col), the rest at their spawn position. Stops at the
+    // first special piece, whose power-up the search can't model, and gives up
+    // at the deadline (System.nanoTime()). Returns the solution length, 0 if none.
+    public int solve(int[] rows, int[] types, int count, int rotation, int row, int col, long deadline) {
+        solves++;
+        solutionLength = 0;
+        this.deadline = deadline;
+        timedOut = false;
+        nodes = 0;
+        stamp++;
+        startRotation = rotation;
+        startRow = row;
+        startCol = col;
+
+        int known = 0;
+        while (known < Math.min(count, MAX_PIECES) && types[known] <= 7) {
+            pieces[known] = types[known];
+            known++;
+        }
+        int top = 0;
+        int cells = 0;
+        while (top < height && rows[top] == 0) {
+            top++;
+        }
+        for (int r = top; r < height; r++) {
+            cells += Integer.bitCount(rows[r]);
+        }
+        if (top == height) {
+            return 0; // already clear
+        }
+
+        // Lowest target first: it needs the fewest pieces
+        for (int target = height - top; target <= maxRows && !timedOut; target++) {
+            int need = target * width - cells;
+            int used = 0;
+            while (used < known && need > 0) {
+                need -= CELLS[pieces[used++] - 1];
+            }
+            if (need != 0) continue;
+            pieceCount = used;
+            prepareBounds();
+            System.arraycopy(rows, 0, boards[0], 0, height);
+            if (search(0, target)) {
+                solutionLength = pieceCount;
+                solutions++;
+                break;
+            }
+        }
+        if (timedOut) timeouts++;
+        totalNodes += nodes;
+        return solutionLength;
+    }
+
+    // Balance and cell-count bounds for each suffix of the pieces
+    private void prepareBounds() {
+        boolean[] last = balanceReach[pieceCount];
+        Arrays.fill(last, false);
+        last[BALANCE_OFFSET] = true;
+        cellGcd[pieceCount] = 0;
+        for (int d = pieceCount - 1; d >= 0; d--) {
+            boolean[] next = balanceReach[d + 1];
+            boolean[] reach = balanceReach[d];
+            Arrays.fill(reach, false);
+            for (int v : BALANCES[pieces[d] - 1]) {
+                for (int s = Math.max(0, -v); s < next.length && s + v < reach.length; s++) {
+                    if (next[s]) reach[s + v] = true;
+                }
+            }
+            cellGcd[d] = gcd(cellGcd[d + 1], CELLS[pieces[d] - 1]);
+        }
+    }
+
+    // Tries every placement of piece d on boards[d], which has `remaining` rows left to clear
+    private boolean search(int d, int remaining) {
+        if (remaining == 0) return true; // cell counts make this the last piece
+        if (d == pieceCount) return false;
+        if ((++nodes & CHECK_MASK) == 0 && System.nanoTime() >= deadline) {
+            timedOut = true;
+        }
+        if (timedOut) return false;
+
+        int[] board = boards[d];
+        int floor = height - remaining; // first row pieces may use
+        long key = memoKey(board, floor, d);
+        int slot = (int) (key ^ (key >>> 32)) & ((1 << MEMO_BITS) - 1);
+        if (memoStamps[slot] == stamp && memoKeys[slot] == key) return false;
+        if (!feasible(board, floor, d)) {
+            remember(slot, key);
+            return false;
+        }
+
+        int type = pieces[d];
+        int found = d == 0
+                ? generator.generate(board, type, startRotation, startRow, startCol)
+                : generator.generate(board, type, 0, 0, Tetromino.spawnColumn(type, width));
+        int count = 0;
+        for (int i = 0; i < found; i++) {
+            if (generator.getRow(i) >= floor) {
+                candRotation[d][count] = generator.getRotation(i);
+                candRow[d][count] = generator.getRow(i);
+                candCol[d][count] = generator.getCol(i);
+                count++;
+            }
+        }
+
+        int[] next = boards[d + 1];
+        for (int i = 0; i < count; i++) {
+            int rotation = candRotation[d][i];
+            System.arraycopy(board, 0, next, 0, height);
+            BitBoard.place(next, Tetromino.masks(type, rotation), candRow[d][i], candCol[d][i]);
+            int lines = BitBoard.clearFullRows(next, height, fullMask);
+            if (search(d + 1, remaining - lines)) {
+                solutionRotation[d] = rotation;
+                solutionRow[d] = candRow[d][i];
+                solutionCol[d] = candCol[d][i];
+                return true;
+            }
+            if (timedOut) return false;
+        }
+        remember(slot, key);
+        return false;
+    }
+
+    // Necessary conditions for the pieces [d, pieceCount) to fill the empty
+    // cells of rows [floor, height) exactly
+    private boolean feasible(int[] board, int floor, int d) {
+        int balance = 0;
+        int emptyLeft = 0;
+        for (int col = 0; col < width; col++) {
+            int empty = 0;
+            for (int r = floor; r < height; r++) {
+                if ((board[r] & (1 << col)) == 0) empty++;
+            }
+            balance += (col & 1) == 0 ? empty : -empty;
+            if (empty == 0) {
+                // A filled column walls off the cells to its left
+                if (emptyLeft % cellGcd[d] != 0) return false;
+                emptyLeft = 0;
+            } else {
+                emptyLeft += empty;
+            }
+        }
+        return emptyLeft % cellGcd[d] == 0
+                && Math.abs(balance) <= BALANCE_OFFSET
+                && balanceReach[d][BALANCE_OFFSET + balance];
+    }
+
+    private long memoKey(int[] board, int floor, int d) {
+        long h = d * 0x9E3779B97F4A7C15L + floor;
+        for (int r = floor; r < height; r++) {
+            h = (h ^ board[r]) * 0xBF58476D1CE4E5B9L;
+            h ^= h >>> 31;
+        }
+        return h;
+    }
+
+    private void remember(int slot, long key) {
+        memoKeys[slot] = key;
+        memoStamps[slot] = stamp;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // Placement i of the last solution, rotation absolute
+    public int getRotation(int i) {
+        return solutionRotation[i];
+    }
+
+    public int getRow(int i) {
+        return solutionRow[i];
+    }
+
+    public int getCol(int i) {
+        return solutionCol[i];
+    }
+
+    public int getType(int i) {
+        return pieces[i];
+    }
+
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+
+    // True if rows is the board the solution expects before placement i
+    public boolean expects(int i, int[] rows) {
+        return i < solutionLength && Arrays.equals(boards[i], rows);
+    }
+
+    public long getSolves() {
+        return solves;
+    }
+
+    public long getSolutions() {
+        return solutions;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getTotalNodes() {
+        return totalNodes;
+    }
+}
@@ -0,0 +1,121 @@
+import java.util.SplittableRandom;
+
+// Seeded source of piece types with a ring-buffer preview of the next pieces.
+// The same mode, seed and piece set always give the same sequence, so UI,
+// headless and benchmark runs can be replayed exactly.
+public class PieceGenerator {
+    public enum Mode {
+        UNIFORM, // every piece independently random
+        BAG      // shuffled bag of every piece type (7-bag, or all types in extended mode)
+    }
+
+    private static final int STANDARD_PIECES = 7;
+    private static final double POWER_UP_CHANCE = 0.3;
+
+    private final Mode mode;
+    private final boolean extendedMode;
+    private final int pieceCount;
+    private final long seed;
+    private final SplittableRandom random;
+    private final int[] bag;
+    private int bagIndex;
+
+    // Preview ring buffer; head is the next piece to hand out
+    private final int[] queueTypes;
+    private final byte[] queuePowerUps; // index into Tetromino.POWER_UPS, -1 for none
+    private int head = 0;
+    private int lastPowerUp = -1;
+
+    public PieceGenerator(Mode mode, boolean extendedMode, long seed, int previewSize) {
+        this.mode = mode;
+        this.extendedMode = extendedMode;
+        this.pieceCount = extendedMode ? Tetromino.TYPE_COUNT : STANDARD_PIECES;
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.bag = new int[pieceCount];
+        this.bagIndex = pieceCount;
+        this.queueTypes = new int[Math.max(1, previewSize)];
+        this.queuePowerUps = new byte[queueTypes.length];
+        for (int i = 0; i < queueTypes.length; i++) {
+            generate(i);
+        }
+    }
+
+    // Generator configured from GameConfig; a seed of 0 picks a fresh one
+    public static PieceGenerator fromConfig(GameConfig config) {
+        long seed = config.getPieceSeed();
+        if (seed == 0) {
+            seed = System.nanoTime();
+        }
+        return new PieceGenerator(config.getPieceGenerator(), config.isExtendedMode(), seed, config.getPreviewSize());
+    }
+
+    // Hands out the next piece type and refills the freed preview slot
+    public int next() {
+        int type = queueTypes[head];
+        lastPowerUp = queuePowerUps[head];
+        generate(head);
+        head = (head + 1) % queueTypes.length;
+        return type;
+    }
+
+    // Power-up of the piece last returned by next(), -1 for none
+    public int lastPowerUp() {
+        return lastPowerUp;
+    }
+
+    // Type of the piece i places after the next one (0 = next)
+    public int peek(int i) {
+        return queueTypes[(head + i) % queueTypes.length];
+    }
+
+    public int getPreviewSize() {
+        return queueTypes.length;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isExtendedMode() {
+        return extendedMode;
+    }
+
+    private void generate(int slot) {
+        int idx;
+        if (mode == Mode.BAG) {
+            if (bagIndex == pieceCount) {
+                refillBag();
+            }
+            idx = bag[bagIndex++];
+        } else {
+            idx = random.nextInt(pieceCount);
+        }
+        queueTypes[slot] = idx + 1;
+
+        // Special pieces (index 7+) may carry a power-up
+        int powerUp = -1;
+        if (extendedMode && idx >= STANDARD_PIECES && random.nextDouble() < POWER_UP_CHANCE) {
+            powerUp = random.nextInt(Tetromino.POWER_UPS.length);
+        }
+        queuePowerUps[slot] = (byte) powerUp;
+    }
+
+    private void refillBag() {
+        for (int i = 0; i < pieceCount; i++) {
+            bag[i] = i;
+        }
+        // Fisher-Yates shuffle
+        for (int i = pieceCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = bag[i];
+            bag[i] = bag[j];
+            bag[j] = tmp;
+        }
+        bagIndex = 0;
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+// Bounded cache of AI decisions keyed by the board's surface: the height
+// difference between neighbouring columns, clamped to [-4, 3] and packed 3 bits
+// each, plus the current piece and the preview pieces the search looks at. On a
+// board without holes the surface fixes every placement up to a shift in height,
+// so a decision searched once can be replayed without searching again.
+// Entries live in 8-way sets with CLOCK replacement. Storage is a heap buffer,
+// or a memory-mapped file when one is configured so a warm cache survives restarts.
+public class PlacementCache {
+    private static final int MAGIC = 0x54504331; // "TPC1"
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 16;   // key, move, referenced bit
+    private static final int WAYS = 8;
+    private static final int DIFF_BITS = 3;
+    private static final int MIN_DIFF = -4;
+    private static final int MAX_DIFF = 3;
+    private static final int TYPE_BITS = 4;
+
+    // One cache per board width, piece count, evaluation and file, shared by every AI player
+    private static final Map<String, PlacementCache> SHARED = new HashMap<>();
+
+    private final int width;
+    private final int pieces;
+    private final int sets;
+    private final ByteBuffer entries;
+    private final byte[] hands;
+    private final boolean usable;
+
+    private long hits;
+    private long misses;
+    private long skipped;
+    private long stores;
+
+    private PlacementCache(int width, int pieces, int weightsHash, int sizeBits, String fileName) {
+        this.width = width;
+        this.pieces = pieces;
+        this.usable = (width - 1) * DIFF_BITS + pieces * TYPE_BITS <= 62;
+        int capacity = 1 << Math.max(sizeBits, 3);
+        this.sets = capacity / WAYS;
+        this.hands = new byte[sets];
+        int size = HEADER_BYTES + capacity * ENTRY_BYTES;
+
+        ByteBuffer buffer = null;
+        if (fileName != null && !fileName.isEmpty()) {
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                // The mapping stays valid after the channel is closed
+                buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+                System.out.println("Placement cache mapped to " + fileName);
+            } catch (IOException e) {
+                System.err.println("Failed to map placement cache: " + e.getMessage());
+            }
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(size);
+        }
+        this.entries = buffer;
+
+        // A file written for another board, piece count or evaluation is started over
+        if (entries.getInt(0) != MAGIC || entries.getInt(4) != width || entries.getInt(8) != pieces
+                || entries.getInt(12) != weightsHash || entries.getInt(16) != capacity) {
+            for (int i = 0; i < size; i += 8) {
+                entries.putLong(i, 0);
+            }
+            entries.putInt(0, MAGIC);
+            entries.putInt(4, width);
+            entries.putInt(8, pieces);
+            entries.putInt(12, weightsHash);
+            entries.putInt(16, capacity);
+        }
+    }
+
+    // evaluationHash identifies the scoring (evaluator fingerprint and line weight)
+    public static synchronized PlacementCache shared(int width, int pieces, long evaluationHash, int sizeBits, String fileName) {
+        int weightsHash = (int) (evaluationHash ^ (evaluationHash >>> 32));
+        String id = width + "/" + pieces + "/" + weightsHash + "/" + sizeBits + "/" + fileName;
+        return SHARED.computeIfAbsent(id, k -> new PlacementCache(width, pieces, weightsHash, sizeBits, fileName));
+    }
+
+    // Key for a board's features and the pieces being searched, or 0 if the
+    // profile doesn't fit in a key or the preview is shorter than the search's
+    public long key(BoardFeatures features, int type, int[] preview, int previewCount) {
+        if (!usable || previewCount < pieces - 1) {
+            return 0;
+        }
+        long key = 0;
+        for (int col = 1; col < width; col++) {
+            int diff = features.getHeight(col) - features.getHeight(col - 1);
+            diff = Math.max(MIN_DIFF, Math.min(MAX_DIFF, diff));
+            key = (key << DIFF_BITS) | (diff - MIN_DIFF);
+        }
+        key = (key << TYPE_BITS) | type;
+        for (int i = 0; i < pieces - 1; i++) {
+            key = (key << TYPE_BITS) | preview[i];
+        }
+        return key | (1L << 63);
+    }
+
+    // Cached move for a key, or -1
+    public synchronized int lookup(long key) {
+        int base = setOffset(key);
+        for (int way = 0; way < WAYS; way++) {
+            int offset = base + way * ENTRY_BYTES;
+            if (entries.getLong(offset) == key) {
+                entries.putInt(offset + 12, 1);
+                hits++;
+                return entries.getInt(offset + 8);
+            }
+        }
+        misses++;
+        return -1;
+    }
+
+    public synchronized void store(long key, int move) {
+        int set = setIndex(key);
+        int base = HEADER_BYTES + set * WAYS * ENTRY_BYTES;
+        int victim = -1;
+        for (int way = 0; way < WAYS; way++) {
+            long existing = entries.getLong(base + way * ENTRY_BYTES);
+            if (existing == key || existing == 0) {
+                victim = way;
+                break;
+            }
+        }
+        if (victim < 0) {
+            // CLOCK: clear reference bits until an entry not used since the last sweep comes up
+            int hand = hands[set];
+            while (entries.getInt(base + hand * ENTRY_BYTES + 12) != 0) {
+                entries.putInt(base + hand * ENTRY_BYTES + 12, 0);
+                hand = (hand + 1) % WAYS;
+            }
+            victim = hand;
+            hands[set] = (byte) ((hand + 1) % WAYS);
+        }
+        int offset = base + victim * ENTRY_BYTES;
+        entries.putLong(offset, key);
+        entries.putInt(offset + 8, move);
+        entries.putInt(offset + 12, 1);
+        stores++;
+    }
+
+    // Counts a decision that couldn't use the cache (holes, high stack, short preview)
+    public synchronized void recordSkip() {
+        skipped++;
+    }
+
+    // Writes a mapped cache back to its file
+    public synchronized void flush() {
+        if (entries instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) entries).force();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    public synchronized long getStores() {
+        return stores;
+    }
+
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private int setOffset(long key) {
+        return HEADER_BYTES + setIndex(key) * WAYS * ENTRY_BYTES;
+    }
+
+    private int setIndex(long key) {
+        // Mix the packed fields so neighbouring profiles spread over the sets
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) ((h ^ (h >>> 32)) & (sets - 1));
+    }
+}
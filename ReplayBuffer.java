@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.SplittableRandom;
+
+// Fixed-size ring of (board, reward, next board, terminal) transitions stored
+// off the Java heap: a direct buffer, or a memory-mapped file when one is given
+// so the experience survives restarts. Boards are stored as their
+// BoardEvaluator features. Once full, the oldest transitions are overwritten.
+// sample() copies random transitions into caller-owned arrays in the
+// evaluator's structure-of-arrays layout without allocating.
+public class ReplayBuffer {
+    private static final int MAGIC = 0x54525031; // "TRP1"
+    private static final int HEADER_BYTES = 32;
+    private static final int F = BoardEvaluator.FEATURE_COUNT;
+    // features, reward, next features, terminal
+    private static final int RECORD_FLOATS = 2 * F + 2;
+    private static final int RECORD_BYTES = RECORD_FLOATS * 4;
+
+    private final int capacity;
+    private final ByteBuffer buffer;
+    private int size;
+    private int head; // slot the next transition goes into
+
+    public ReplayBuffer(int capacity, String fileName) {
+        this.capacity = Math.max(1, capacity);
+        long bytes = HEADER_BYTES + (long) this.capacity * RECORD_BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Replay buffer of " + capacity + " transitions is too large");
+        }
+
+        ByteBuffer mapped = null;
+        if (fileName != null && !fileName.isEmpty()) {
+            try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+                // The mapping stays valid after the channel is closed
+                mapped = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                System.out.println("Replay buffer mapped to " + fileName);
+            } catch (IOException e) {
+                System.err.println("Failed to map replay buffer: " + e.getMessage());
+            }
+        }
+        this.buffer = (mapped != null ? mapped : ByteBuffer.allocateDirect((int) bytes)).order(ByteOrder.LITTLE_ENDIAN);
+
+        // Pick up where a previous run with the same capacity left off
+        if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == this.capacity && buffer.getInt(8) == RECORD_FLOATS) {
+            size = Math.min(buffer.getInt(12), this.capacity);
+            head = Math.floorMod(buffer.getInt(16), this.capacity);
+            if (size > 0) {
+                System.out.println("Replay buffer resumed with " + size + " transitions");
+            }
+        } else {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, this.capacity);
+            buffer.putInt(8, RECORD_FLOATS);
+            writeHeader();
+        }
+    }
+
+    // Adds a transition; features are read from state[stateOffset..+F) and next[nextOffset..+F)
+    public void add(float[] state, int stateOffset, float reward, float[] next, int nextOffset, boolean terminal) {
+        int pos = HEADER_BYTES + head * RECORD_BYTES;
+        for (int f = 0; f < F; f++) {
+            buffer.putFloat(pos + f * 4, state[stateOffset + f]);
+        }
+        buffer.putFloat(pos + F * 4, reward);
+        for (int f = 0; f < F; f++) {
+            buffer.putFloat(pos + (F + 1 + f) * 4, next[nextOffset + f]);
+        }
+        buffer.putFloat(pos + (2 * F + 1) * 4, terminal ? 1f : 0f);
+        head = head + 1 == capacity ? 0 : head + 1;
+        if (size < capacity) size++;
+        writeHeader();
+    }
+
+    // Copies count random transitions: feature f of sample i goes to
+    // states[f * count + i] and nextStates[f * count + i]
+    public void sample(int count, SplittableRandom random, float[] states, float[] rewards,
+                       float[] nextStates, float[] terminals) {
+        for (int i = 0; i < count; i++) {
+            int pos = HEADER_BYTES + random.nextInt(size) * RECORD_BYTES;
+            for (int f = 0; f < F; f++) {
+                states[f * count + i] = buffer.getFloat(pos + f * 4);
+                nextStates[f * count + i] = buffer.getFloat(pos + (F + 1 + f) * 4);
+            }
+            rewards[i] = buffer.getFloat(pos + F * 4);
+            terminals[i] = buffer.getFloat(pos + (2 * F + 1) * 4);
+        }
+    }
+
+    // Mean absolute value of one feature over the stored transitions
+    public double meanAbs(int feature) {
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += Math.abs(buffer.getFloat(HEADER_BYTES + i * RECORD_BYTES + feature * 4));
+        }
+        return size == 0 ? 0 : sum / size;
+    }
+
+    // Writes a mapped buffer back to its file
+    public void flush() {
+        if (buffer instanceof MappedByteBuffer) {
+            ((MappedByteBuffer) buffer).force();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getBytes() {
+        return HEADER_BYTES + (long) capacity * RECORD_BYTES;
+    }
+
+    private void writeHeader() {
+        buffer.putInt(12, size);
+        buffer.putInt(16, head);
+    }
+}
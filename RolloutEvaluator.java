@@ -0,0 +1,239 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Scores candidate boards by playing short rollouts from them: the known preview
+// pieces first, then random ones, each placed greedily by the board evaluator
+// with an occasional random placement. A piece's drop spots are all scored in
+// one batch. A board's score is the mean over its rollouts of lines cleared
+// plus the evaluation of the board the rollout ends on.
+// Rollouts are independent ForkJoin tasks on per-thread primitive scratch, so
+// more cores means more rollouts in the same time.
+public class RolloutEvaluator {
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+    private static final double RANDOM_MOVE_CHANCE = 0.1;
+    private static final int TOP_OUT_PENALTY = -1_000_000;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int width;
+    private final int height;
+    private final int fullMask;
+    private final int pieceCount;
+    private final BoardEvaluator evaluator;
+    private final int weightLines;
+
+    // Inputs and per-rollout results of the evaluation in progress
+    private int[][] boards;
+    private int[] preview;
+    private int previewCount;
+    private int rollouts;
+    private int depth;
+    private long seed;
+    private long deadline;
+    private long[] rolloutScores;
+    private boolean[] rolloutDone;
+
+    public RolloutEvaluator(int width, int height, boolean extendedMode, BoardEvaluator evaluator, int weightLines) {
+        this.width = width;
+        this.height = height;
+        this.fullMask = BitBoard.fullMask(width);
+        this.pieceCount = extendedMode ? Tetromino.TYPE_COUNT : 7;
+        this.evaluator = evaluator;
+        this.weightLines = weightLines;
+    }
+
+    // Mean rollout score of boards[0..count) into scores. Rollouts not started by
+    // the deadline (Long.MAX_VALUE for none) are skipped; returns how many ran.
+    public int evaluate(int[][] boards, int count, int[] preview, int previewCount,
+                        int rollouts, int depth, long seed, long deadline, double[] scores) {
+        this.boards = boards;
+        this.preview = preview;
+        this.previewCount = previewCount;
+        this.rollouts = rollouts;
+        this.depth = depth;
+        this.seed = seed;
+        this.deadline = deadline;
+        int total = count * rollouts;
+        if (rolloutScores == null || rolloutScores.length < total) {
+            rolloutScores = new long[total];
+            rolloutDone = new boolean[total];
+        }
+        Arrays.fill(rolloutDone, 0, total, false);
+
+        POOL.invoke(new RolloutTask(0, total));
+
+        int finished = 0;
+        for (int b = 0; b < count; b++) {
+            long sum = 0;
+            int done = 0;
+            for (int r = b * rollouts; r < (b + 1) * rollouts; r++) {
+                if (rolloutDone[r]) {
+                    sum += rolloutScores[r];
+                    done++;
+                }
+            }
+            scores[b] = done == 0 ? 0 : (double) sum / done;
+            finished += done;
+        }
+        return finished;
+    }
+
+    // One rollout from board index / rollouts; the seed depends only on the index,
+    // so results don't depend on which thread ran it
+    private void rollout(int index, Scratch scratch) {
+        System.arraycopy(boards[index / rollouts], 0, scratch.rows, 0, height);
+        SplittableRandom random = new SplittableRandom(seed * 31 + index);
+        long score = 0;
+        for (int step = 0; step < depth; step++) {
+            int type = step < previewCount ? preview[step] : 1 + random.nextInt(pieceCount);
+            int lines = playGreedy(scratch, type, random);
+            if (lines < 0) {
+                rolloutScores[index] = score + TOP_OUT_PENALTY;
+                return;
+            }
+            score += (long) lines * weightLines;
+        }
+        scratch.features.compute(scratch.rows);
+        BoardEvaluator.writeFeatures(scratch.features, scratch.batch, scratch.stride, 0);
+        evaluator.score(scratch.batch, scratch.stride, 1, scratch.scores);
+        rolloutScores[index] = score + Math.round(scratch.scores[0]);
+    }
+
+    // Places one piece at the best straight-drop spot (or a random one now and
+    // then). Returns the lines cleared, or -1 if the piece has nowhere to go.
+    private int playGreedy(Scratch scratch, int type, SplittableRandom random) {
+        int[] rows = scratch.rows;
+        updateColumnTops(rows, scratch.columnTops);
+        boolean randomMove = random.nextDouble() < RANDOM_MOVE_CHANCE;
+        int options = 0;
+        int count = 0;
+        int bestRotation = -1;
+        int bestCol = 0;
+        int bestRow = 0;
+        for (int rotation = 0; rotation < Tetromino.rotationCount(type); rotation++) {
+            int[] bottoms = Tetromino.bottoms(type, rotation);
+            int[] masks = Tetromino.masks(type, rotation);
+            for (int col = 0; col + bottoms.length <= width; col++) {
+                int row = height;
+                for (int c = 0; c < bottoms.length; c++) {
+                    row = Math.min(row, scratch.columnTops[col + c] - 1 - bottoms[c]);
+                }
+                if (row < 0) continue;
+                if (randomMove) {
+                    // Reservoir sampling picks uniformly among the legal spots
+                    if (random.nextInt(++options) == 0) {
+                        bestRotation = rotation;
+                        bestCol = col;
+                        bestRow = row;
+                    }
+                } else {
+                    System.arraycopy(rows, 0, scratch.trial, 0, height);
+                    BitBoard.place(scratch.trial, masks, row, col);
+                    scratch.lines[count] = BitBoard.clearFullRows(scratch.trial, height, fullMask);
+                    scratch.features.compute(scratch.trial);
+                    BoardEvaluator.writeFeatures(scratch.features, scratch.batch, scratch.stride, count);
+                    scratch.spots[count] = (rotation << 16) | (row << 8) | col;
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            evaluator.score(scratch.batch, scratch.stride, count, scratch.scores);
+            // Ties keep the first spot in enumeration order
+            int best = 0;
+            int bestScore = Integer.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                int score = scratch.lines[i] * weightLines + Math.round(scratch.scores[i]);
+                if (i == 0 || score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            bestRotation = scratch.spots[best] >>> 16;
+            bestRow = (scratch.spots[best] >>> 8) & 0xFF;
+            bestCol = scratch.spots[best] & 0xFF;
+        }
+        if (bestRotation < 0) return -1;
+        BitBoard.place(rows, Tetromino.masks(type, bestRotation), bestRow, bestCol);
+        return BitBoard.clearFullRows(rows, height, fullMask);
+    }
+
+    // First filled row of each column, height if empty
+    private void updateColumnTops(int[] rows, int[] columnTops) {
+        int seen = 0;
+        for (int col = 0; col < width; col++) {
+            columnTops[col] = height;
+        }
+        for (int row = 0; row < height && seen != fullMask; row++) {
+            int fresh = rows[row] & ~seen;
+            while (fresh != 0) {
+                columnTops[Integer.numberOfTrailingZeros(fresh)] = row;
+                fresh &= fresh - 1;
+            }
+            seen |= rows[row];
+        }
+    }
+
+    // Scratch board, trial board, features and evaluation batch for one rollout thread
+    private static class Scratch {
+        int[] rows = new int[0];
+        int[] trial = new int[0];
+        int[] columnTops = new int[0];
+        BoardFeatures features;
+        // One slot per straight-drop spot of a piece
+        int stride;
+        float[] batch = new float[0];
+        float[] scores = new float[0];
+        int[] lines = new int[0];
+        int[] spots = new int[0]; // rotation << 16 | row << 8 | col
+
+        void resize(int width, int height) {
+            if (rows.length != height) {
+                rows = new int[height];
+                trial = new int[height];
+            }
+            if (columnTops.length != width) {
+                columnTops = new int[width];
+                stride = 4 * width;
+                batch = new float[BoardEvaluator.FEATURE_COUNT * stride];
+                scores = new float[stride];
+                lines = new int[stride];
+                spots = new int[stride];
+            }
+            if (features == null) {
+                features = new BoardFeatures(width, height);
+            } else {
+                features.resize(width, height);
+            }
+        }
+    }
+
+    private class RolloutTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        RolloutTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                // The first rollout of each board always runs so every board gets a score
+                if (from % rollouts != 0 && deadline != Long.MAX_VALUE && System.nanoTime() >= deadline) {
+                    return;
+                }
+                Scratch scratch = SCRATCH.get();
+                scratch.resize(width, height);
+                rollout(from, scratch);
+                rolloutDone[from] = true;
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RolloutTask(from, mid), new RolloutTask(mid, to));
+        }
+    }
+}
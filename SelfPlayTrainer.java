@@ -0,0 +1,464 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Learns a board evaluator from self-play. A VectorEnv runs many games; in each
+// one the current network picks the straight-drop placement with the best lines
+// cleared plus value of the board left behind (a random one now and then). Each
+// move adds a transition between consecutive afterstates to an off-heap
+// ReplayBuffer, and the network is fitted to the TD(0) target
+//   reward + GAMMA * V(next board)   (reward alone when the game ended)
+// on random minibatches, with a target network that is refreshed periodically
+// and Adam updates. Features are normalized by their mean magnitude in the
+// replay. Values are learned in lines and scaled by the lines weight when saved,
+// so the file is a LearnedEvaluator the in-game AIPlayer loads via aiEvaluatorFile.
+// Usage: java SelfPlayTrainer [steps] [envs] [hidden] [replayCapacity] [seed] [output] [replayFile]
+public class SelfPlayTrainer {
+    private static final int F = BoardEvaluator.FEATURE_COUNT;
+    private static final double GAMMA = 0.95;
+    private static final double EPSILON_START = 0.1;
+    private static final double EPSILON_END = 0.01;
+    private static final int BATCH = 128;
+    private static final int UPDATES_PER_STEP = 2;
+    private static final int TARGET_REFRESH = 500; // updates between target network copies
+    private static final int MIN_TASK_ENVS = 8;
+    private static final float LEARNING_RATE = 1e-3f;
+    private static final float BETA1 = 0.9f;
+    private static final float BETA2 = 0.999f;
+    private static final float ADAM_EPSILON = 1e-8f;
+    private static final int REPORT_STEPS = 1000;
+    // Scratch for choosing moves, per collecting thread
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final VectorEnv env;
+    private final ReplayBuffer replay;
+    private final int envs;
+    private final int width;
+    private final int height;
+    private final int hidden;
+    private final int warmup;
+    private final long seed;
+    private final SplittableRandom random;
+
+    // Parameters, flattened: W1 (hidden x F), b1, w2 (hidden, or F when linear), b2
+    private final int w2Offset;
+    private final int b2Offset;
+    private final float[] params;
+    private final float[] targetParams;
+    private final float[] grad;
+    private final float[] adamM;
+    private final float[] adamV;
+    private final float[] inputScale = new float[F];
+    private int updates;
+
+    // Afterstate features chosen for each game this step and the step before
+    private final float[] chosen;
+    private final float[] previous;
+    private final boolean[] hasPrevious;
+    private final boolean[] noAfterstate; // no placement this step, so chosen is stale
+    private final int[] actions;
+    private double epsilon = EPSILON_START;
+    private int step;
+
+    // Minibatch buffers
+    private final float[] batchStates = new float[F * BATCH];
+    private final float[] batchNext = new float[F * BATCH];
+    private final float[] batchRewards = new float[BATCH];
+    private final float[] batchTerminals = new float[BATCH];
+    private final float[] batchValues = new float[BATCH];
+    private final float[] batchTargets = new float[BATCH];
+    private final float[] batchDelta = new float[BATCH];
+    private final float[] batchHidden;
+    private double lossSum;
+    private int lossCount;
+
+    public SelfPlayTrainer(int envs, int hidden, int replayCapacity, long seed, String replayFile) {
+        GameConfig config = GameConfig.getInstance();
+        this.envs = Math.max(1, envs);
+        this.width = config.getFieldWidth();
+        this.height = config.getFieldHeight();
+        this.hidden = Math.max(0, hidden);
+        this.seed = seed;
+        this.random = new SplittableRandom(seed);
+        this.env = new VectorEnv(this.envs, width, height, config.getPreviewSize(), seed, VectorEnv.ActionSpace.PLACEMENTS);
+        this.replay = new ReplayBuffer(replayCapacity, replayFile);
+        this.warmup = Math.min(replay.capacity(), Math.max(BATCH * 8, 10 * this.envs));
+
+        w2Offset = this.hidden * F + this.hidden;
+        b2Offset = w2Offset + (this.hidden == 0 ? F : this.hidden);
+        params = new float[b2Offset + 1];
+        targetParams = new float[params.length];
+        grad = new float[params.length];
+        adamM = new float[params.length];
+        adamV = new float[params.length];
+        batchHidden = new float[Math.max(1, this.hidden) * BATCH];
+        initParams();
+        // Until the replay has data, scale every feature to roughly [0, 1]
+        Arrays.fill(inputScale, 1f / height);
+        if (replay.size() >= warmup) {
+            normalizeInputs();
+        }
+
+        chosen = new float[this.envs * F];
+        previous = new float[this.envs * F];
+        hasPrevious = new boolean[this.envs];
+        noAfterstate = new boolean[this.envs];
+        actions = new int[this.envs];
+    }
+
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int envs = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int hidden = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int capacity = args.length > 3 ? Integer.parseInt(args[3]) : 1_000_000;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        String output = args.length > 5 ? args[5] : "ai_evaluator.properties";
+        String replayFile = args.length > 6 ? args[6] : "";
+
+        SelfPlayTrainer trainer = new SelfPlayTrainer(envs, hidden, capacity, seed, replayFile);
+        System.out.printf("Training %s for %d steps x %d games, replay of %d transitions (%d MB off-heap)%n",
+                hidden == 0 ? "a linear evaluator" : "an evaluator with " + hidden + " hidden units",
+                steps, envs, capacity, trainer.replay.getBytes() >> 20);
+        long start = System.nanoTime();
+        long reportStart = start;
+        for (int s = 1; s <= steps; s++) {
+            trainer.step(steps);
+            if (s % REPORT_STEPS == 0 || s == steps) {
+                long now = System.nanoTime();
+                System.out.printf("Step %d: %.1f lines/game over %d games, loss %.4f, epsilon %.3f, %.0f moves/s%n",
+                        s, trainer.env.getAverageEpisodeLines(), trainer.env.getTotalEpisodes(),
+                        trainer.takeLoss(), trainer.epsilon, (double) REPORT_STEPS * envs * 1e9 / (now - reportStart));
+                reportStart = now;
+                trainer.toEvaluator().save(output, String.format("Evaluator trained by SelfPlayTrainer, %d moves", (long) s * envs));
+            }
+        }
+        trainer.replay.flush();
+        System.out.printf("Saved to %s after %.1fs; set aiEvaluatorFile=%s to play with it%n",
+                output, (System.nanoTime() - start) / 1e9, output);
+    }
+
+    // One move in every game, then a few minibatch updates
+    public void step(int totalSteps) {
+        step++;
+        epsilon = EPSILON_START + (EPSILON_END - EPSILON_START) * Math.min(1.0, (double) step / Math.max(1, totalSteps / 2));
+        if (envs < 2 * MIN_TASK_ENVS || ForkJoinPool.commonPool().getParallelism() < 2) {
+            chooseRange(0, envs);
+        } else {
+            ForkJoinPool.commonPool().invoke(new ChooseTask(0, envs));
+        }
+        env.step(actions);
+
+        float[] rewards = env.getRewards();
+        boolean[] dones = env.getDones();
+        boolean[] truncated = env.getTruncated();
+        for (int i = 0; i < envs; i++) {
+            if (hasPrevious[i] && !noAfterstate[i]) {
+                replay.add(previous, i * F, rewards[i], chosen, i * F, dones[i] && !truncated[i]);
+            }
+            // Without an afterstate there's nothing to chain the next move to
+            hasPrevious[i] = !dones[i] && !noAfterstate[i];
+            System.arraycopy(chosen, i * F, previous, i * F, F);
+        }
+
+        if (replay.size() < warmup) return;
+        if (updates == 0) {
+            normalizeInputs();
+        }
+        for (int u = 0; u < UPDATES_PER_STEP; u++) {
+            update();
+        }
+    }
+
+    // Picks the move for games [from, to); the seed depends only on the game
+    // and step, so results don't depend on which thread ran it
+    private void chooseRange(int from, int to) {
+        Scratch scratch = SCRATCH.get();
+        scratch.resize(width, height, hidden);
+        for (int i = from; i < to; i++) {
+            GameEngine engine = env.getEngine(i);
+            Tetromino current = engine.getCurrentTetromino();
+            engine.getBoard().copyRowsTo(scratch.rows);
+            SplittableRandom moveRandom = new SplittableRandom(seed * 1_000_003L + (long) step * envs + i);
+
+            int count = 0;
+            for (int rotation = 0; rotation < Tetromino.rotationCount(current.type); rotation++) {
+                for (int col = 0; col + Tetromino.width(current.type, rotation) <= width; col++) {
+                    int row = dropRow(scratch.rows, current, rotation, col);
+                    if (row < 0) continue;
+                    System.arraycopy(scratch.rows, 0, scratch.trial, 0, height);
+                    BitBoard.place(scratch.trial, Tetromino.masks(current.type, rotation), row, col);
+                    scratch.lines[count] = BitBoard.clearFullRows(scratch.trial, height, BitBoard.fullMask(width));
+                    scratch.features.compute(scratch.trial);
+                    BoardEvaluator.writeFeatures(scratch.features, scratch.raw, scratch.stride, count);
+                    scratch.actions[count] = rotation * width + col;
+                    count++;
+                }
+            }
+            noAfterstate[i] = count == 0;
+            if (count == 0) {
+                actions[i] = 0; // nowhere to go; VectorEnv locks the piece where it is
+                continue;
+            }
+
+            int best;
+            if (moveRandom.nextDouble() < epsilon) {
+                best = moveRandom.nextInt(count);
+            } else {
+                scale(scratch.raw, scratch.scaled, scratch.stride, count);
+                forward(params, scratch.scaled, scratch.stride, count, scratch.values, scratch.hidden);
+                best = 0;
+                for (int c = 1; c < count; c++) {
+                    if (scratch.lines[c] + scratch.values[c] > scratch.lines[best] + scratch.values[best]) {
+                        best = c;
+                    }
+                }
+            }
+            actions[i] = scratch.actions[best];
+            for (int f = 0; f < F; f++) {
+                chosen[i * F + f] = scratch.raw[f * scratch.stride + best];
+            }
+        }
+    }
+
+    // Row a straight drop along the engine's placePiece path ends on, -1 if the path is blocked
+    private int dropRow(int[] rows, Tetromino current, int rotation, int col) {
+        int rot = current.rotation;
+        int row = current.row;
+        int c = current.col;
+        while (rot != rotation) {
+            rot = Tetromino.nextRotation(rot);
+            if (!BitBoard.fits(rows, width, height, Tetromino.masks(current.type, rot), row, c)) return -1;
+        }
+        int[] masks = Tetromino.masks(current.type, rot);
+        int dir = col > c ? 1 : -1;
+        while (c != col) {
+            c += dir;
+            if (!BitBoard.fits(rows, width, height, masks, row, c)) return -1;
+        }
+        while (BitBoard.fits(rows, width, height, masks, row + 1, c)) {
+            row++;
+        }
+        return row;
+    }
+
+    // One Adam step on a random minibatch
+    private void update() {
+        replay.sample(BATCH, random, batchStates, batchRewards, batchNext, batchTerminals);
+        scale(batchNext, batchNext, BATCH, BATCH);
+        forward(targetParams, batchNext, BATCH, BATCH, batchTargets, batchHidden);
+        for (int i = 0; i < BATCH; i++) {
+            batchTargets[i] = batchRewards[i] + (batchTerminals[i] != 0 ? 0f : (float) GAMMA * batchTargets[i]);
+        }
+        scale(batchStates, batchStates, BATCH, BATCH);
+        forward(params, batchStates, BATCH, BATCH, batchValues, batchHidden);
+        backward();
+
+        updates++;
+        float correction1 = 1f - (float) Math.pow(BETA1, updates);
+        float correction2 = 1f - (float) Math.pow(BETA2, updates);
+        for (int p = 0; p < params.length; p++) {
+            adamM[p] = BETA1 * adamM[p] + (1 - BETA1) * grad[p];
+            adamV[p] = BETA2 * adamV[p] + (1 - BETA2) * grad[p] * grad[p];
+            float m = adamM[p] / correction1;
+            float v = adamV[p] / correction2;
+            params[p] -= LEARNING_RATE * m / ((float) Math.sqrt(v) + ADAM_EPSILON);
+        }
+        if (updates % TARGET_REFRESH == 0) {
+            System.arraycopy(params, 0, targetParams, 0, params.length);
+        }
+    }
+
+    // Gradient of the mean squared TD error for the batch in batchStates/batchHidden
+    private void backward() {
+        float[] d = batchDelta;
+        for (int i = 0; i < BATCH; i++) {
+            float error = batchValues[i] - batchTargets[i];
+            lossSum += error * error;
+            d[i] = error / BATCH;
+        }
+        lossCount += BATCH;
+        float gb2 = 0;
+        for (int i = 0; i < BATCH; i++) {
+            gb2 += d[i];
+        }
+        grad[b2Offset] = gb2;
+
+        if (hidden == 0) {
+            for (int f = 0; f < F; f++) {
+                float g = 0;
+                for (int i = 0; i < BATCH; i++) {
+                    g += d[i] * batchStates[f * BATCH + i];
+                }
+                grad[w2Offset + f] = g;
+            }
+            return;
+        }
+        for (int j = 0; j < hidden; j++) {
+            int h = j * BATCH;
+            float w2 = params[w2Offset + j];
+            float gw2 = 0;
+            float gb1 = 0;
+            for (int f = 0; f < F; f++) {
+                grad[j * F + f] = 0;
+            }
+            for (int i = 0; i < BATCH; i++) {
+                float act = batchHidden[h + i];
+                gw2 += d[i] * act;
+                if (act <= 0) continue;
+                float dh = d[i] * w2;
+                gb1 += dh;
+                for (int f = 0; f < F; f++) {
+                    grad[j * F + f] += dh * batchStates[f * BATCH + i];
+                }
+            }
+            grad[w2Offset + j] = gw2;
+            grad[hidden * F + j] = gb1;
+        }
+    }
+
+    // out[i] = V(board i) in lines; hiddenOut keeps the ReLU activations, hidden x stride
+    private void forward(float[] p, float[] x, int stride, int count, float[] out, float[] hiddenOut) {
+        Arrays.fill(out, 0, count, p[b2Offset]);
+        if (hidden == 0) {
+            for (int f = 0; f < F; f++) {
+                float w = p[w2Offset + f];
+                for (int i = 0; i < count; i++) {
+                    out[i] += w * x[f * stride + i];
+                }
+            }
+            return;
+        }
+        for (int j = 0; j < hidden; j++) {
+            int h = j * stride;
+            Arrays.fill(hiddenOut, h, h + count, p[hidden * F + j]);
+            for (int f = 0; f < F; f++) {
+                float w = p[j * F + f];
+                for (int i = 0; i < count; i++) {
+                    hiddenOut[h + i] += w * x[f * stride + i];
+                }
+            }
+            float w2 = p[w2Offset + j];
+            for (int i = 0; i < count; i++) {
+                float act = Math.max(hiddenOut[h + i], 0f);
+                hiddenOut[h + i] = act;
+                out[i] += w2 * act;
+            }
+        }
+    }
+
+    private void scale(float[] raw, float[] scaled, int stride, int count) {
+        for (int f = 0; f < F; f++) {
+            float s = inputScale[f];
+            for (int i = 0; i < count; i++) {
+                scaled[f * stride + i] = raw[f * stride + i] * s;
+            }
+        }
+    }
+
+    // Scales each feature by its mean magnitude in the replay
+    private void normalizeInputs() {
+        for (int f = 0; f < F; f++) {
+            inputScale[f] = (float) (1 / Math.max(1.0, replay.meanAbs(f)));
+        }
+    }
+
+    // He-initialized hidden layer; small output weights so early values stay near zero
+    private void initParams() {
+        for (int j = 0; j < hidden; j++) {
+            for (int f = 0; f < F; f++) {
+                params[j * F + f] = (float) (gaussian() * Math.sqrt(2.0 / F));
+            }
+        }
+        for (int p = w2Offset; p < b2Offset; p++) {
+            params[p] = (float) (gaussian() * 0.01);
+        }
+        System.arraycopy(params, 0, targetParams, 0, params.length);
+    }
+
+    // The current network as a LearnedEvaluator in AIWeights units: the output
+    // layer is scaled by the lines weight, which ReLU lets through unchanged
+    public LearnedEvaluator toEvaluator() {
+        float lines = AIWeights.getDefault().get(AIWeights.LINES);
+        float[] w1 = Arrays.copyOfRange(params, 0, hidden * F);
+        float[] b1 = Arrays.copyOfRange(params, hidden * F, w2Offset);
+        float[] w2 = Arrays.copyOfRange(params, w2Offset, b2Offset);
+        for (int i = 0; i < w2.length; i++) {
+            w2[i] *= lines;
+        }
+        return new LearnedEvaluator(hidden, inputScale, w1, b1, w2, params[b2Offset] * lines);
+    }
+
+    // Mean squared TD error since the last call
+    private double takeLoss() {
+        double loss = lossCount == 0 ? 0 : lossSum / lossCount;
+        lossSum = 0;
+        lossCount = 0;
+        return loss;
+    }
+
+    // Box-Muller; SplittableRandom has no nextGaussian
+    private double gaussian() {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    // Candidate afterstates of one piece
+    private static class Scratch {
+        int[] rows = new int[0];
+        int[] trial = new int[0];
+        BoardFeatures features;
+        int stride;
+        float[] raw = new float[0];
+        float[] scaled = new float[0];
+        float[] values = new float[0];
+        float[] hidden = new float[0];
+        int[] lines = new int[0];
+        int[] actions = new int[0];
+
+        void resize(int width, int height, int hiddenUnits) {
+            if (rows.length != height) {
+                rows = new int[height];
+                trial = new int[height];
+            }
+            if (features == null) {
+                features = new BoardFeatures(width, height);
+            } else {
+                features.resize(width, height);
+            }
+            if (stride != 4 * width) {
+                stride = 4 * width;
+                raw = new float[F * stride];
+                scaled = new float[F * stride];
+                values = new float[stride];
+                lines = new int[stride];
+                actions = new int[stride];
+            }
+            if (hidden.length < Math.max(1, hiddenUnits) * stride) {
+                hidden = new float[Math.max(1, hiddenUnits) * stride];
+            }
+        }
+    }
+
+    private class ChooseTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        ChooseTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_TASK_ENVS) {
+                chooseRange(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ChooseTask(from, mid), new ChooseTask(mid, to));
+        }
+    }
+}
@@ -1,43 +1,28 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.function.IntSupplier;
 
-class TetrisPanel extends JPanel implements ActionListener, KeyListener {
+class TetrisPanel extends JPanel implements ActionListener, KeyListener, GameEngine.Listener {
     private static final int BLOCK_SIZE = 30;
     private Timer timer;
-    private int[][] board;
-    private Tetromino current;
+    private GameEngine engine;
     private boolean paused = false;
-    private boolean gameOver = false;
     private MainFrame frame;
     private GameConfig config;
     private AudioManager audioManager;
     private AIPlayer aiPlayer;
     private ExternalPlayer externalPlayer;
     private HighScoreManager scoreManager;
-    private int score = 0;
-    private int linesCleared = 0;
     private int boardWidth;
     private int boardHeight;
     private boolean scoreRecorded = false;
     
-    // Two-player mode variables
-    private int currentPlayer = 1; // 1 or 2
-    private int player1Score = 0;
-    private int player2Score = 0;
-    private int player1Lines = 0;
-    private int player2Lines = 0;
-    
     // Separate AI and External players for each player
     private AIPlayer player1AI;
     private AIPlayer player2AI;
     private ExternalPlayer player1External;
     private ExternalPlayer player2External;
-    
-    // Extended mode power-up variables
-    private int scoreMultiplier = 1;
-    private boolean gravityMode = false;
-    private int freezeTime = 0;
 
     public TetrisPanel(MainFrame frame) {
         this.frame = frame;
@@ -50,9 +35,7 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         setFocusable(true);
         addKeyListener(this);
         
-        int baseDelay = 500;
-        int levelDelay = Math.max(100, baseDelay - (config.getGameLevel() - 1) * 40);
-        timer = new Timer(levelDelay, this);
+        timer = new Timer(engine.getDropInterval(), this);
         timer.start();
         
         // Start audio
@@ -65,7 +48,7 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         // Initialize player type
         initializePlayerType();
         
-        spawnTetromino();
+        engine.start();
     }
     
     private void initializePlayerType() {
@@ -80,20 +63,24 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
     private void initializePlayer(int playerNumber, GameConfig.PlayerType playerType) {
         switch (playerType) {
             case AI:
+            case MONTE_CARLO:
+                AIPlayer ai = new AIPlayer(this);
+                if (playerType == GameConfig.PlayerType.MONTE_CARLO) {
+                    ai.setStrategy(AIPlayer.Strategy.ROLLOUT);
+                }
                 if (playerNumber == 1) {
-                    player1AI = new AIPlayer(this);
-                    player1AI.startAI();
+                    player1AI = ai;
                 } else {
-                    player2AI = new AIPlayer(this);
-                    player2AI.startAI();
+                    player2AI = ai;
                 }
+                ai.startAI();
                 break;
             case EXTERNAL:
                 if (playerNumber == 1) {
-                    player1External = new ExternalPlayer(this);
+                    player1External = new ExternalPlayer(this, 1);
                     player1External.startExternalControl();
                 } else {
-                    player2External = new ExternalPlayer(this);
+                    player2External = new ExternalPlayer(this, 2);
                     player2External.startExternalControl();
                 }
                 break;
@@ -134,18 +121,46 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         }
     }
 
-    private void spawnTetromino() {
-        current = Tetromino.randomTetromino(boardWidth, config.isExtendedMode());
-        // Check if the new tetromino can be placed at its starting position
-        if (!canMove(current.shape, current.row, current.col)) {
-            gameOver = true;
-            timer.stop();
-            audioManager.stopBackgroundMusic();
-            if (aiPlayer != null) aiPlayer.stopAI();
-            if (externalPlayer != null) externalPlayer.stopExternalControl();
-            
-            // Record the score
-            recordScore();
+    @Override
+    public void gameOver() {
+        timer.stop();
+        audioManager.stopBackgroundMusic();
+        if (aiPlayer != null) aiPlayer.stopAI();
+        if (externalPlayer != null) externalPlayer.stopExternalControl();
+        
+        // Record the score
+        recordScore();
+    }
+    
+    @Override
+    public void pieceMoved(Tetromino piece) {
+        if (config.isSoundEffectsEnabled()) {
+            audioManager.playMove();
+        }
+    }
+    
+    @Override
+    public void pieceRotated(Tetromino piece) {
+        if (config.isSoundEffectsEnabled()) {
+            audioManager.playRotate();
+        }
+    }
+    
+    @Override
+    public void piecePlaced(int linesClearedThisTurn) {
+        if (config.isSoundEffectsEnabled()) {
+            if (linesClearedThisTurn > 0) {
+                audioManager.playLineClear();
+            } else {
+                audioManager.playTetrominoPlace();
+            }
+        }
+    }
+    
+    @Override
+    public void powerUpActivated(String powerUp) {
+        if (config.isSoundEffectsEnabled()) {
+            audioManager.playPowerUp();
         }
     }
 
@@ -153,6 +168,13 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         
+        BitBoard board = engine.getBoard();
+        Tetromino current = engine.getCurrentTetromino();
+        boolean gameOver = engine.isGameOver();
+        int currentPlayer = engine.getCurrentPlayer();
+        int scoreMultiplier = engine.getScoreMultiplier();
+        int freezeTime = engine.getFreezeTime();
+        
         // Calculate offset to center the playing area
         int gameAreaWidth = boardWidth * BLOCK_SIZE;
         int gameAreaHeight = boardHeight * BLOCK_SIZE;
@@ -175,8 +197,9 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         // Draw board
         for (int row = 0; row < boardHeight; row++) {
             for (int col = 0; col < boardWidth; col++) {
-                if (board[row][col] != 0) {
-                    g.setColor(Tetromino.color(board[row][col]));
+                int cell = board.getCell(row, col);
+                if (cell != 0) {
+                    g.setColor(Tetromino.color(cell));
                     g.fillRect(offsetX + col * BLOCK_SIZE, offsetY + row * BLOCK_SIZE, BLOCK_SIZE, BLOCK_SIZE);
                     g.setColor(Color.DARK_GRAY);
                     g.drawRect(offsetX + col * BLOCK_SIZE, offsetY + row * BLOCK_SIZE, BLOCK_SIZE, BLOCK_SIZE);
@@ -185,9 +208,10 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         }
         // Draw current tetromino
         if (!gameOver && current != null) {
-            for (int r = 0; r < current.shape.length; r++) {
-                for (int c = 0; c < current.shape[0].length; c++) {
-                    if (current.shape[r][c] != 0) {
+            int[][] shape = current.shape();
+            for (int r = 0; r < shape.length; r++) {
+                for (int c = 0; c < shape[0].length; c++) {
+                    if (shape[r][c] != 0) {
                         int drawRow = current.row + r;
                         int drawCol = current.col + c;
                         if (drawRow >= 0 && drawRow < boardHeight && drawCol >= 0 && drawCol < boardWidth) {
@@ -225,16 +249,21 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         
         // Draw text in the right panel area
         g.drawString("Player 1 (" + player1Type.name() + ")", textAreaX, textY);
-        g.drawString("Score: " + player1Score + controlledIndicator1, textAreaX, textY + 20);
-        g.drawString("Lines: " + player1Lines, textAreaX, textY + 40);
+        g.drawString("Score: " + engine.getPlayer1Score() + controlledIndicator1, textAreaX, textY + 20);
+        g.drawString("Lines: " + engine.getPlayer1Lines(), textAreaX, textY + 40);
         
         g.drawString("Player 2 (" + player2Type.name() + ")", textAreaX, textY + 80);
-        g.drawString("Score: " + player2Score + controlledIndicator2, textAreaX, textY + 100);
-        g.drawString("Lines: " + player2Lines, textAreaX, textY + 120);
+        g.drawString("Score: " + engine.getPlayer2Score() + controlledIndicator2, textAreaX, textY + 100);
+        g.drawString("Lines: " + engine.getPlayer2Lines(), textAreaX, textY + 120);
         
         g.drawString("Current: " + currentPlayer + " (" + currentPlayerType.name() + ")", textAreaX, textY + 160);
         g.drawString("Controlled: " + controlledPlayer, textAreaX, textY + 180);
         g.drawString("Level: " + config.getGameLevel(), textAreaX, textY + 200);
+        StringBuilder next = new StringBuilder("Next:");
+        for (int i = 0; i < engine.getPreviewSize(); i++) {
+            next.append(' ').append(engine.getPreview(i));
+        }
+        g.drawString(next.toString(), textAreaX, textY + 220);
         
         // Extended mode power-up display
         if (config.isExtendedMode()) {
@@ -242,7 +271,7 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
             if (freezeTime > 0) {
                 g.drawString("FROZEN: " + freezeTime + "s", textAreaX, textY + 260);
             }
-            if (gravityMode) {
+            if (engine.isGravityMode()) {
                 g.drawString("GRAVITY MODE", textAreaX, textY + 280);
             }
             if (current != null && current.isSpecial && current.powerUp != null) {
@@ -283,182 +312,20 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        if (paused || gameOver || current == null)
+        if (paused || engine.isGameOver())
             return;
-            
-        // Handle freeze mode
-        if (freezeTime > 0) {
-            freezeTime--;
-            return;
-        }
-            
-        // Try to move down
-        if (canMove(current.shape, current.row + 1, current.col)) {
-            current.row++;
-        } else {
-            // Can't move down, place the tetromino
-            placeTetromino();
-            int linesClearedThisTurn = eraseRows();
-            if (linesClearedThisTurn > 0) {
-        // Two-player mode scoring with multiplier
-        int baseScore = linesClearedThisTurn * 100 * config.getGameLevel() * scoreMultiplier;
-        if (currentPlayer == 1) {
-            player1Lines += linesClearedThisTurn;
-            player1Score += baseScore;
-        } else {
-            player2Lines += linesClearedThisTurn;
-            player2Score += baseScore;
-        }
         
-        // Reduce multiplier over time
-        if (scoreMultiplier > 1) {
-            scoreMultiplier = Math.max(1, scoreMultiplier - 1);
-        }
-                if (config.isSoundEffectsEnabled()) {
-                    audioManager.playLineClear();
-                }
-            } else {
-                if (config.isSoundEffectsEnabled()) {
-                    audioManager.playTetrominoPlace();
-                }
-            }
-            spawnTetromino();
-        }
+        engine.step();
         repaint();
     }
 
-    private void placeTetromino() {
-        if (current == null) return;
-        
-        // Handle power-up activation
-        if (current.isSpecial && current.powerUp != null) {
-            activatePowerUp(current.powerUp);
-        }
-        
-        for (int r = 0; r < current.shape.length; r++) {
-            for (int c = 0; c < current.shape[0].length; c++) {
-                if (current.shape[r][c] != 0) {
-                    int br = current.row + r;
-                    int bc = current.col + c;
-                    // Ensure we're within bounds before placing
-                    if (br >= 0 && br < boardHeight && bc >= 0 && bc < boardWidth) {
-                        board[br][bc] = current.type;
-                    }
-                }
-            }
-        }
-    }
-    
-    private void activatePowerUp(String powerUp) {
-        switch (powerUp) {
-            case "BOMB":
-                // Clear a 3x3 area around the placed piece
-                clearBombArea();
-                break;
-            case "CLEAR_ROW":
-                // Clear the row where the piece was placed
-                clearRow(current.row);
-                break;
-            case "CLEAR_COL":
-                // Clear the column where the piece was placed
-                clearColumn(current.col);
-                break;
-            case "GRAVITY":
-                // Enable gravity mode for 10 seconds
-                gravityMode = true;
-                break;
-            case "FREEZE":
-                // Freeze the game for 5 seconds
-                freezeTime = 5;
-                break;
-            case "MULTIPLIER":
-                // Double score multiplier for next 5 pieces
-                scoreMultiplier = Math.min(scoreMultiplier * 2, 8);
-                break;
-        }
-        
-        if (config.isSoundEffectsEnabled()) {
-            audioManager.playPowerUp();
-        }
-    }
-    
-    private void clearBombArea() {
-        int centerRow = current.row + current.shape.length / 2;
-        int centerCol = current.col + current.shape[0].length / 2;
-        
-        for (int r = Math.max(0, centerRow - 1); r <= Math.min(boardHeight - 1, centerRow + 1); r++) {
-            for (int c = Math.max(0, centerCol - 1); c <= Math.min(boardWidth - 1, centerCol + 1); c++) {
-                board[r][c] = 0;
-            }
-        }
-    }
-    
-    private void clearRow(int row) {
-        if (row >= 0 && row < boardHeight) {
-            for (int c = 0; c < boardWidth; c++) {
-                board[row][c] = 0;
-            }
-        }
-    }
-    
-    private void clearColumn(int col) {
-        if (col >= 0 && col < boardWidth) {
-            for (int r = 0; r < boardHeight; r++) {
-                board[r][col] = 0;
-            }
-        }
-    }
-
-    private int eraseRows() {
-        int linesClearedCount = 0;
-        for (int r = boardHeight - 1; r >= 0; r--) {
-            boolean full = true;
-            for (int c = 0; c < boardWidth; c++) {
-                if (board[r][c] == 0) {
-                    full = false;
-                    break;
-                }
-            }
-            if (full) {
-                linesClearedCount++;
-                for (int rr = r; rr > 0; rr--) {
-                    System.arraycopy(board[rr - 1], 0, board[rr], 0, boardWidth);
-                }
-                for (int c = 0; c < boardWidth; c++)
-                    board[0][c] = 0;
-                r++; // Check same row again after shift
-            }
-        }
-        return linesClearedCount;
-    }
-
-    private boolean canMove(int[][] shape, int row, int col) {
-        for (int r = 0; r < shape.length; r++) {
-            for (int c = 0; c < shape[0].length; c++) {
-                if (shape[r][c] != 0) {
-                    int br = row + r;
-                    int bc = col + c;
-                    // Check boundaries
-                    if (br < 0 || br >= boardHeight || bc < 0 || bc >= boardWidth) {
-                        return false;
-                    }
-                    // Check collision with existing blocks
-                    if (br >= 0 && br < boardHeight && bc >= 0 && bc < boardWidth && board[br][bc] != 0) {
-                        return false;
-                    }
-                }
-            }
-        }
-        return true;
-    }
-
     @Override
     public void keyPressed(KeyEvent e) {
         int code = e.getKeyCode();
         
         // Handle ESC key for both game over and during gameplay
         if (code == KeyEvent.VK_ESCAPE) {
-            if (gameOver) {
+            if (engine.isGameOver()) {
                 // If game is over, exit directly
                 stopGame();
                 frame.showMainMenu();
@@ -476,6 +343,7 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         }
         
         // Handle new game key (N) when game is over
+        boolean gameOver = engine.isGameOver();
         if (code == KeyEvent.VK_N && gameOver) {
             resetGame();
             return;
@@ -561,63 +429,110 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         }
     }
     
-    // Public methods for AI and external player control
+    // Public methods for AI and external player control; safe to call from any
+    // thread, and each returns once the move has been applied on the game thread
     public void moveLeft() {
-        if (canMove(current.shape, current.row, current.col - 1)) {
-            current.col--;
-            if (config.isSoundEffectsEnabled()) {
-                audioManager.playMove();
-            }
-        }
+        callOnGameThread(() -> engine.applyAction(GameEngine.Action.LEFT) ? 1 : 0);
     }
     
     public void moveRight() {
-        if (canMove(current.shape, current.row, current.col + 1)) {
-            current.col++;
-            if (config.isSoundEffectsEnabled()) {
-                audioManager.playMove();
-            }
-        }
+        callOnGameThread(() -> engine.applyAction(GameEngine.Action.RIGHT) ? 1 : 0);
     }
     
     public void moveDown() {
-        if (canMove(current.shape, current.row + 1, current.col)) {
-            current.row++;
-        }
+        callOnGameThread(() -> engine.applyAction(GameEngine.Action.DOWN) ? 1 : 0);
     }
     
     public void rotate() {
-        int[][] rotated = current.rotate();
-        if (canMove(rotated, current.row, current.col)) {
-            current.shape = rotated;
-            if (config.isSoundEffectsEnabled()) {
-                audioManager.playRotate();
-            }
-        }
+        callOnGameThread(() -> engine.applyAction(GameEngine.Action.ROTATE) ? 1 : 0);
     }
     
     public void drop() {
-        while (canMove(current.shape, current.row + 1, current.col)) {
-            current.row++;
+        callOnGameThread(() -> engine.applyAction(GameEngine.Action.DROP) ? 1 : 0);
+    }
+    
+    // Moves the current piece to (rotation, column), hard drops and locks it in one
+    // step on the game thread. Returns false if the placement isn't reachable.
+    public boolean placePiece(int rotation, int column) {
+        return callOnGameThread(() -> engine.placePiece(rotation, column) ? 1 : 0) != 0;
+    }
+    
+    // Locks the current piece at any reachable resting spot, tucks and spins included
+    public boolean placePiece(int rotation, int row, int column) {
+        return callOnGameThread(() -> engine.placePiece(rotation, row, column) ? 1 : 0) != 0;
+    }
+    
+    // Applies a sequence of inputs (GameEngine.Action ordinals) in one go on the
+    // game thread, so no gravity step lands in between. Returns how many of
+    // them changed the piece's position.
+    public int applyActions(byte[] actions) {
+        return callOnGameThread(() -> {
+            GameEngine.Action[] all = GameEngine.Action.values();
+            int moved = 0;
+            for (byte action : actions) {
+                if (engine.applyAction(all[action])) {
+                    moved++;
+                }
+            }
+            return moved;
+        });
+    }
+    
+    // Runs an engine call on the game thread, waiting for its result
+    private int callOnGameThread(IntSupplier call) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            int result = call.getAsInt();
+            repaint();
+            return result;
+        }
+        int[] result = new int[1];
+        try {
+            SwingUtilities.invokeAndWait(() -> {
+                result[0] = call.getAsInt();
+                repaint();
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (java.lang.reflect.InvocationTargetException e) {
+            System.err.println("Error in game thread call: " + e.getCause());
         }
+        return result[0];
     }
     
+    // Safe from any thread; runs on the game thread and returns once done
     public void togglePause() {
-        paused = !paused;
-        if (paused) {
-            timer.stop();
-            audioManager.stopBackgroundMusic();
-        } else {
-            timer.start();
-            if (config.isMusicEnabled()) {
-                audioManager.playBackgroundMusic();
+        callOnGameThread(() -> {
+            paused = !paused;
+            if (paused) {
+                timer.stop();
+                audioManager.stopBackgroundMusic();
+            } else {
+                timer.start();
+                if (config.isMusicEnabled()) {
+                    audioManager.playBackgroundMusic();
+                }
+                // AI moves that arrived while paused were dropped
+                if (player1AI != null) player1AI.gameResumed();
+                if (player2AI != null) player2AI.gameResumed();
             }
+            return 0;
+        });
+    }
+    
+    // The game thread is the Swing event thread: the timer, input and bot moves all run there
+    public void runOnGameThread(Runnable task) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+        } else {
+            SwingUtilities.invokeLater(() -> {
+                task.run();
+                repaint();
+            });
         }
-        repaint();
     }
     
     public boolean isGameOver() {
-        return gameOver;
+        return engine.isGameOver();
     }
     
     public boolean isPaused() {
@@ -625,20 +540,20 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
     }
     
     public Tetromino getCurrentTetromino() {
-        return current;
+        return engine.getCurrentTetromino();
     }
     
     public int getScore() {
-        return score;
+        return engine.getScore();
     }
     
     public int getLinesCleared() {
-        return linesCleared;
+        return engine.getLinesCleared();
     }
     
     // Getters for external player
     public int getCurrentPlayer() {
-        return currentPlayer;
+        return engine.getCurrentPlayer();
     }
     
     public int getGameLevel() {
@@ -646,51 +561,61 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
     }
     
     public int getPlayer1Score() {
-        return player1Score;
+        return engine.getPlayer1Score();
     }
     
     public int getPlayer1Lines() {
-        return player1Lines;
+        return engine.getPlayer1Lines();
     }
     
     public int getPlayer2Score() {
-        return player2Score;
+        return engine.getPlayer2Score();
     }
     
     public int getPlayer2Lines() {
-        return player2Lines;
+        return engine.getPlayer2Lines();
     }
     
     public int getCurrentPieceType() {
+        Tetromino current = engine.getCurrentTetromino();
         return current != null ? current.type : 0;
     }
     
     public int getCurrentPieceRow() {
+        Tetromino current = engine.getCurrentTetromino();
         return current != null ? current.row : 0;
     }
     
     public int getCurrentPieceCol() {
+        Tetromino current = engine.getCurrentTetromino();
         return current != null ? current.col : 0;
     }
     
+    public int getCurrentPieceRotation() {
+        Tetromino current = engine.getCurrentTetromino();
+        return current != null ? current.rotation : 0;
+    }
+    
     public boolean isCurrentPieceSpecial() {
+        Tetromino current = engine.getCurrentTetromino();
         return current != null && current.isSpecial;
     }
     
     public String getCurrentPiecePowerUp() {
+        Tetromino current = engine.getCurrentTetromino();
         return current != null ? current.powerUp : null;
     }
     
     public int getScoreMultiplier() {
-        return scoreMultiplier;
+        return engine.getScoreMultiplier();
     }
     
     public boolean isGravityMode() {
-        return gravityMode;
+        return engine.isGravityMode();
     }
     
     public int getFreezeTime() {
-        return freezeTime;
+        return engine.getFreezeTime();
     }
     
     public AIPlayer getAIPlayer() {
@@ -701,6 +626,10 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         return externalPlayer;
     }
     
+    public GameEngine getEngine() {
+        return engine;
+    }
+    
     
     public int getBoardWidth() {
         return boardWidth;
@@ -710,17 +639,19 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         return boardHeight;
     }
     
-    public int[][] getBoard() {
-        return board;
+    public BitBoard getBoard() {
+        return engine.getBoard();
     }
     
     // Debug method to print board state
     private void printBoard() {
+        BitBoard board = engine.getBoard();
+        Tetromino current = engine.getCurrentTetromino();
         System.out.println("Current tetromino at row: " + current.row + ", col: " + current.col);
         System.out.println("Board state:");
         for (int row = 0; row < boardHeight; row++) {
             for (int col = 0; col < boardWidth; col++) {
-                System.out.print(board[row][col] + " ");
+                System.out.print(board.getCell(row, col) + " ");
             }
             System.out.println();
         }
@@ -741,13 +672,17 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
         audioManager.stopBackgroundMusic();
         
         // Set game over to true to prevent further actions
-        gameOver = true;
+        engine.endGame();
         
         // Ensure focus is maintained for key events
         requestFocusInWindow();
     }
     
     public void recordScore() {
+        int player1Score = engine.getPlayer1Score();
+        int player2Score = engine.getPlayer2Score();
+        int player1Lines = engine.getPlayer1Lines();
+        int player2Lines = engine.getPlayer2Lines();
         // Always two-player mode - record both scores
         if ((player1Score > 0 || player2Score > 0) && !scoreRecorded) {
             scoreRecorded = true;
@@ -788,7 +723,9 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
     private void initializeBoard() {
         this.boardWidth = config.getFieldWidth();
         this.boardHeight = config.getFieldHeight();
-        this.board = new int[boardHeight][boardWidth];
+        this.engine = new GameEngine(boardWidth, boardHeight, config.getGameLevel(), PieceGenerator.fromConfig(config));
+        engine.addListener(this);
+        System.out.println("Piece seed: " + engine.getSeed());
             // Make panel size dynamic to accommodate the field size and text area
             int textAreaWidth = 200; // Space for text on the right
             int panelWidth = Math.max(600, boardWidth * BLOCK_SIZE + textAreaWidth + 40); // Game area + text area + padding
@@ -797,53 +734,40 @@ class TetrisPanel extends JPanel implements ActionListener, KeyListener {
     }
     
     // Method to reset the game for a new game
+    // Safe from any thread; runs on the game thread and returns once done
     public void resetGame() {
-        // Reinitialize board with current config settings
-        initializeBoard();
+        callOnGameThread(() -> {
+            // Reinitialize board with current config settings
+            initializeBoard();
         
-        // Reset game state
-        gameOver = false;
-        paused = false;
-        score = 0;
-        linesCleared = 0;
-        scoreRecorded = false;
-        current = null;
-        
-        // Reset two-player mode variables
-        currentPlayer = 1;
-        player1Score = 0;
-        player2Score = 0;
-        player1Lines = 0;
-        player2Lines = 0;
-        
-        // Clear the board
-        for (int row = 0; row < boardHeight; row++) {
-            for (int col = 0; col < boardWidth; col++) {
-                board[row][col] = 0;
-            }
-        }
+            // Reset game state
+            paused = false;
+            scoreRecorded = false;
         
-        // Restart timer
-        int baseDelay = 500;
-        int levelDelay = Math.max(100, baseDelay - (config.getGameLevel() - 1) * 40);
-        timer = new Timer(levelDelay, this);
-        timer.start();
+            // Restart timer
+            if (timer != null) {
+                timer.stop();
+            }
+            timer = new Timer(engine.getDropInterval(), this);
+            timer.start();
         
-        // Restart audio
-        audioManager.setMusicEnabled(config.isMusicEnabled());
-        audioManager.setSoundEnabled(config.isSoundEffectsEnabled());
-        if (config.isMusicEnabled()) {
-            audioManager.playBackgroundMusic();
-        }
+            // Restart audio
+            audioManager.setMusicEnabled(config.isMusicEnabled());
+            audioManager.setSoundEnabled(config.isSoundEffectsEnabled());
+            if (config.isMusicEnabled()) {
+                audioManager.playBackgroundMusic();
+            }
         
-        // Reinitialize player type
-        initializePlayerType();
+            // Reinitialize player type
+            initializePlayerType();
         
-        // Spawn new tetromino
-        spawnTetromino();
+            // Spawn new tetromino
+            engine.start();
         
-        // Request focus
-        requestFocusInWindow();
+            // Request focus
+            requestFocusInWindow();
+            return 0;
+        });
     }
 
     @Override
@@ -1,9 +1,10 @@
 import java.awt.*;
+import java.util.Arrays;
 
 class Tetromino {
-    public int[][] shape;
     public int row, col;
     public int type;
+    public int rotation; // index into the rotation tables, 0-3
     public boolean isSpecial = false;
     public String powerUp = null;
     
@@ -56,6 +57,48 @@ class Tetromino {
             { { 0, 0, 13, 0, 0 }, { 13, 13, 13, 13, 13 } }
     };
     
+    public static final int TYPE_COUNT = EXTENDED_SHAPES.length;
+    
+    // Rotation tables indexed by [type - 1][rotation], built once from EXTENDED_SHAPES.
+    // Rotation is clockwise about the top-left corner of the bounding box.
+    private static final int[][][][] ROTATIONS = new int[TYPE_COUNT][4][][];
+    private static final int[][][] ROW_MASKS = new int[TYPE_COUNT][4][];
+    private static final int[][][] BOTTOMS = new int[TYPE_COUNT][4][]; // lowest filled row per column
+    private static final int[][] WIDTHS = new int[TYPE_COUNT][4];
+    private static final int[][] HEIGHTS = new int[TYPE_COUNT][4];
+    private static final int[] ROTATION_COUNTS = new int[TYPE_COUNT]; // distinct rotation states
+    
+    static {
+        for (int t = 0; t < TYPE_COUNT; t++) {
+            int[][] shape = EXTENDED_SHAPES[t];
+            for (int rot = 0; rot < 4; rot++) {
+                ROTATIONS[t][rot] = shape;
+                ROW_MASKS[t][rot] = BitBoard.rowMasks(shape);
+                HEIGHTS[t][rot] = shape.length;
+                WIDTHS[t][rot] = shape[0].length;
+                int[] bottoms = new int[shape[0].length];
+                for (int c = 0; c < shape[0].length; c++) {
+                    bottoms[c] = -1;
+                    for (int r = 0; r < shape.length; r++) {
+                        if (shape[r][c] != 0) {
+                            bottoms[c] = r;
+                        }
+                    }
+                }
+                BOTTOMS[t][rot] = bottoms;
+                shape = rotateClockwise(shape);
+            }
+            // Rotation states repeat with period 1, 2 or 4
+            int count = 4;
+            if (Arrays.equals(ROW_MASKS[t][0], ROW_MASKS[t][1])) {
+                count = 1;
+            } else if (Arrays.equals(ROW_MASKS[t][0], ROW_MASKS[t][2])) {
+                count = 2;
+            }
+            ROTATION_COUNTS[t] = count;
+        }
+    }
+    
     private static final Color[] COLORS = {
             Color.CYAN, Color.YELLOW, Color.MAGENTA, Color.GREEN, Color.RED, Color.BLUE, Color.ORANGE,
             // Extended mode colors
@@ -67,35 +110,33 @@ class Tetromino {
         "BOMB", "CLEAR_ROW", "CLEAR_COL", "GRAVITY", "FREEZE", "MULTIPLIER"
     };
 
-    public Tetromino(int[][] shape, int type, int col) {
-        this.shape = shape;
+    public Tetromino(int type, int col) {
         this.type = type;
+        this.rotation = 0;
         this.row = 0;
         this.col = col;
     }
 
-    public static Tetromino randomTetromino(int boardWidth) {
-        return randomTetromino(boardWidth, false);
-    }
-    
-    public static Tetromino randomTetromino(int boardWidth, boolean extendedMode) {
-        int[][][] shapes = extendedMode ? EXTENDED_SHAPES : SHAPES;
-        int idx = (int) (Math.random() * shapes.length);
-        int[][] shape = shapes[idx];
-        int col = boardWidth / 2 - shape[0].length / 2;
-        Tetromino tetromino = new Tetromino(deepCopy(shape), idx + 1, col);
+    // Takes the next piece from the generator, centered at the top of the board
+    public static Tetromino next(PieceGenerator generator, int boardWidth) {
+        int type = generator.next();
+        Tetromino tetromino = new Tetromino(type, spawnColumn(type, boardWidth));
         
         // Add special properties for extended mode
-        if (extendedMode && idx >= 7) { // Special pieces (index 7+)
+        if (generator.isExtendedMode() && type > SHAPES.length) { // Special pieces (index 7+)
             tetromino.isSpecial = true;
-            // Randomly assign power-up
-            if (Math.random() < 0.3) { // 30% chance of power-up
-                tetromino.powerUp = POWER_UPS[(int) (Math.random() * POWER_UPS.length)];
+            int powerUp = generator.lastPowerUp();
+            if (powerUp >= 0) {
+                tetromino.powerUp = POWER_UPS[powerUp];
             }
         }
         
         return tetromino;
     }
+    
+    public static int spawnColumn(int type, int boardWidth) {
+        return boardWidth / 2 - WIDTHS[type - 1][0] / 2;
+    }
 
     public Color color() {
         return COLORS[type - 1];
@@ -105,23 +146,59 @@ class Tetromino {
         return COLORS[type - 1];
     }
 
-    public int[][] rotate() {
+    public int[][] shape() {
+        return ROTATIONS[type - 1][rotation];
+    }
+
+    public int[] masks() {
+        return ROW_MASKS[type - 1][rotation];
+    }
+
+    public int width() {
+        return WIDTHS[type - 1][rotation];
+    }
+
+    public int height() {
+        return HEIGHTS[type - 1][rotation];
+    }
+
+    // Shared table lookups; callers must not modify the returned arrays
+    public static int[][] shape(int type, int rotation) {
+        return ROTATIONS[type - 1][rotation];
+    }
+
+    public static int[] masks(int type, int rotation) {
+        return ROW_MASKS[type - 1][rotation];
+    }
+
+    public static int[] bottoms(int type, int rotation) {
+        return BOTTOMS[type - 1][rotation];
+    }
+
+    public static int width(int type, int rotation) {
+        return WIDTHS[type - 1][rotation];
+    }
+
+    public static int height(int type, int rotation) {
+        return HEIGHTS[type - 1][rotation];
+    }
+
+    public static int rotationCount(int type) {
+        return ROTATION_COUNTS[type - 1];
+    }
+
+    public static int nextRotation(int rotation) {
+        return (rotation + 1) & 3;
+    }
+
+    private static int[][] rotateClockwise(int[][] shape) {
         int rows = shape.length, cols = shape[0].length;
         int[][] rotated = new int[cols][rows];
         for (int r = 0; r < rows; r++) {
             for (int c = 0; c < cols; c++) {
-                if (c < rotated.length && (rows - 1 - r) < rotated[c].length) {
-                    rotated[c][rows - 1 - r] = shape[r][c];
-                }
+                rotated[c][rows - 1 - r] = shape[r][c];
             }
         }
         return rotated;
     }
-
-    private static int[][] deepCopy(int[][] arr) {
-        int[][] copy = new int[arr.length][arr[0].length];
-        for (int i = 0; i < arr.length; i++)
-            System.arraycopy(arr[i], 0, copy[i], 0, arr[0].length);
-        return copy;
-    }
 }
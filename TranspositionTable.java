@@ -0,0 +1,142 @@
+import java.util.SplittableRandom;
+
+// Fixed-size, open-addressed cache of board evaluations keyed by a Zobrist hash
+// of the row masks plus the piece that produced the board. Entries are stored as
+// primitive longs with key ^ data in the key slot, so concurrent search workers
+// can read and write without locks: a torn entry simply fails the key check.
+// Key and data words are interleaved so a whole bucket shares one cache line.
+public class TranspositionTable {
+    private static final int BUCKET_SIZE = 4;
+    private static final long ZOBRIST_SEED = 0x5DEECE66DL;
+
+    private final int width;
+    private final long[] cellKeys;  // [row * width + col]
+    private final long[] pieceKeys; // [type]
+    private final long[] table;     // pairs of (key ^ data, data); data = score | age << 32
+    private final int entries;
+    private final int bucketMask;
+    private int age = 0;
+
+    // Counters are updated by the owner after each search, not by workers
+    private long probes;
+    private long hits;
+    private long stores;
+
+    public TranspositionTable(int width, int height, int sizeBits) {
+        this.width = width;
+        SplittableRandom random = new SplittableRandom(ZOBRIST_SEED);
+        cellKeys = new long[width * height];
+        for (int i = 0; i < cellKeys.length; i++) {
+            cellKeys[i] = random.nextLong();
+        }
+        pieceKeys = new long[Tetromino.TYPE_COUNT + 1];
+        for (int i = 0; i < pieceKeys.length; i++) {
+            pieceKeys[i] = random.nextLong();
+        }
+        entries = 1 << Math.max(sizeBits, 2);
+        table = new long[entries * 2];
+        bucketMask = (entries / BUCKET_SIZE) - 1;
+    }
+
+    // Zobrist hash of a whole board
+    public long hashBoard(int[] rows, int height) {
+        long hash = 0;
+        for (int row = 0; row < height; row++) {
+            int bits = rows[row];
+            while (bits != 0) {
+                hash ^= cellKeys[row * width + Integer.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return hash;
+    }
+
+    // XOR of the cell keys a piece covers; a board hash changes by this when the piece is placed
+    public long hashPiece(int[] masks, int row, int col) {
+        long hash = 0;
+        for (int r = 0; r < masks.length; r++) {
+            int bits = masks[r];
+            while (bits != 0) {
+                hash ^= cellKeys[(row + r) * width + col + Integer.numberOfTrailingZeros(bits)];
+                bits &= bits - 1;
+            }
+        }
+        return hash;
+    }
+
+    // Table key for a board hash and the piece placed to reach it; never 0
+    public long key(long boardHash, int type) {
+        long key = boardHash ^ pieceKeys[type];
+        return key == 0 ? 1 : key;
+    }
+
+    // Start of a new decision; older entries become preferred victims
+    public void newSearch() {
+        age = (age + 1) & 0xFF;
+    }
+
+    // Returns true and fills result[0] on a hit
+    public boolean probe(long key, int[] result) {
+        int base = bucketIndex(key);
+        for (int i = base; i < base + BUCKET_SIZE * 2; i += 2) {
+            long d = table[i + 1];
+            if ((table[i] ^ d) == key) {
+                result[0] = (int) d;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void store(long key, int score) {
+        int base = bucketIndex(key);
+        int victim = base;
+        int victimAge = -1;
+        for (int i = base; i < base + BUCKET_SIZE * 2; i += 2) {
+            long d = table[i + 1];
+            if ((table[i] ^ d) == key || (table[i] == 0 && d == 0)) {
+                victim = i;
+                break;
+            }
+            // Replace the entry written longest ago
+            int entryAge = (age - (int) (d >>> 32)) & 0xFF;
+            if (entryAge > victimAge) {
+                victim = i;
+                victimAge = entryAge;
+            }
+        }
+        long d = (score & 0xFFFFFFFFL) | ((long) age << 32);
+        table[victim + 1] = d;
+        table[victim] = key ^ d;
+    }
+
+    public void recordStats(long probes, long hits, long stores) {
+        this.probes += probes;
+        this.hits += hits;
+        this.stores += stores;
+    }
+
+    public long getProbes() {
+        return probes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getStores() {
+        return stores;
+    }
+
+    public double getHitRate() {
+        return probes == 0 ? 0 : (double) hits / probes;
+    }
+
+    public int getCapacity() {
+        return entries;
+    }
+
+    private int bucketIndex(long key) {
+        return (int) ((key ^ (key >>> 32)) & bucketMask) * BUCKET_SIZE * 2;
+    }
+}
@@ -0,0 +1,307 @@
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// N independent headless games stepped together, for reinforcement-learning
+// trainers that need far more moves than ExternalPlayer's text protocol can
+// carry. step() takes one action per game and runs the games in parallel on
+// the common ForkJoin pool. Results land in buffers allocated once:
+//   observations  observationSize bytes per game, one game after another:
+//                 width * height board cells (row-major from the top, 1 = filled),
+//                 then the current piece's type, rotation, row and column,
+//                 then previewSize upcoming piece types
+//   rewards       lines cleared by the step, minus the game-over penalty
+//   dones         the game ended during the step: topped out, or cut off at
+//                 maxPieces, in which case its truncated flag is also set
+// A game that ends is restarted right away on its next seed, so its observation
+// is already the new game's first one. Game i's episode e uses piece seed
+// seed + i + e * envs, so runs replay exactly whatever the thread count.
+// Usage: java VectorEnv [envs] [steps] [moves|placements] - random-action throughput
+public class VectorEnv {
+    public enum ActionSpace {
+        MOVES,      // GameEngine.Action ordinal or NO_INPUT, then one gravity step
+        PLACEMENTS  // rotation * width + column, dropped straight down
+    }
+
+    public static final int NO_INPUT = GameEngine.Action.values().length;
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+    private static final int MIN_TASK_ENVS = 16;
+    private static final int PIECE_BYTES = 4;
+
+    private final int envs;
+    private final int width;
+    private final int height;
+    private final int previewSize;
+    private final long seed;
+    private final ActionSpace actionSpace;
+    private final int observationSize;
+    private int level = 1;
+    private int maxPieces = 0; // episodes are cut off after this many pieces, 0 = never
+    private float gameOverPenalty = 0;
+
+    private final GameEngine[] engines;
+    private final int[] episodes;     // games started per env
+    private final int[] episodeLines; // lines so far in the current game
+    private final byte[] observations;
+    private final ByteBuffer observationBuffer;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final boolean[] truncated;
+    private final int[] finishedLines; // lines of the game that ended this step
+    private int[] actions; // actions of the step in progress
+
+    // Statistics
+    private long totalSteps;
+    private long totalEpisodes;
+    private long totalEpisodeLines;
+
+    public VectorEnv(int envs, int width, int height, int previewSize, long seed, ActionSpace actionSpace) {
+        this.envs = envs;
+        this.width = width;
+        this.height = height;
+        this.previewSize = Math.max(1, previewSize);
+        this.seed = seed;
+        this.actionSpace = actionSpace;
+        this.observationSize = width * height + PIECE_BYTES + this.previewSize;
+        this.engines = new GameEngine[envs];
+        this.episodes = new int[envs];
+        this.episodeLines = new int[envs];
+        this.observations = new byte[envs * observationSize];
+        this.observationBuffer = ByteBuffer.wrap(observations);
+        this.rewards = new float[envs];
+        this.dones = new boolean[envs];
+        this.truncated = new boolean[envs];
+        this.finishedLines = new int[envs];
+        reset();
+    }
+
+    // Starts every game over from episode 0 and returns the first observations
+    public ByteBuffer reset() {
+        for (int i = 0; i < envs; i++) {
+            episodes[i] = 0;
+            startGame(i);
+            rewards[i] = 0;
+            dones[i] = false;
+            truncated[i] = false;
+        }
+        return observationBuffer;
+    }
+
+    // Applies actions[i] to game i; rewards, dones and observations are updated in place
+    public ByteBuffer step(int[] actions) {
+        if (actions.length < envs) {
+            throw new IllegalArgumentException("Expected " + envs + " actions, got " + actions.length);
+        }
+        this.actions = actions;
+        if (envs < 2 * MIN_TASK_ENVS || POOL.getParallelism() < 2) {
+            stepRange(0, envs);
+        } else {
+            POOL.invoke(new StepTask(0, envs));
+        }
+        this.actions = null;
+
+        totalSteps += envs;
+        for (int i = 0; i < envs; i++) {
+            if (dones[i]) {
+                totalEpisodes++;
+                totalEpisodeLines += finishedLines[i];
+            }
+        }
+        return observationBuffer;
+    }
+
+    private void stepRange(int from, int to) {
+        for (int i = from; i < to; i++) {
+            GameEngine engine = engines[i];
+            int action = actions[i];
+            int linesBefore = engine.getPlayer1Lines();
+            if (actionSpace == ActionSpace.PLACEMENTS) {
+                int rotation = action / width;
+                int column = action % width;
+                if (action < 0 || rotation > 3 || !engine.placePiece(rotation, column)) {
+                    // Unreachable placement; hard drop the piece and lock it there
+                    engine.applyAction(GameEngine.Action.DROP);
+                    engine.step();
+                }
+            } else {
+                if (action >= 0 && action < ACTIONS.length) {
+                    engine.applyAction(ACTIONS[action]);
+                }
+                engine.step();
+            }
+            int lines = engine.getPlayer1Lines() - linesBefore;
+            episodeLines[i] += lines;
+            rewards[i] = lines;
+
+            boolean done = engine.isGameOver() || (maxPieces > 0 && engine.getPiecesPlaced() >= maxPieces);
+            dones[i] = done;
+            truncated[i] = done && !engine.isGameOver();
+            if (done) {
+                if (engine.isGameOver()) {
+                    rewards[i] -= gameOverPenalty;
+                }
+                finishedLines[i] = episodeLines[i];
+                episodes[i]++;
+                startGame(i);
+            } else {
+                writeObservation(i);
+            }
+        }
+    }
+
+    private void startGame(int i) {
+        long gameSeed = seed + i + (long) episodes[i] * envs;
+        PieceGenerator generator = new PieceGenerator(PieceGenerator.Mode.BAG, false, gameSeed, previewSize);
+        engines[i] = new GameEngine(width, height, level, generator);
+        engines[i].start();
+        episodeLines[i] = 0;
+        writeObservation(i);
+    }
+
+    private void writeObservation(int i) {
+        GameEngine engine = engines[i];
+        BitBoard board = engine.getBoard();
+        int offset = i * observationSize;
+        for (int r = 0; r < height; r++) {
+            int mask = board.getRow(r);
+            for (int c = 0; c < width; c++) {
+                observations[offset++] = (byte) ((mask >>> c) & 1);
+            }
+        }
+        Tetromino current = engine.getCurrentTetromino();
+        observations[offset++] = (byte) (current == null ? 0 : current.type);
+        observations[offset++] = (byte) (current == null ? 0 : current.rotation);
+        observations[offset++] = (byte) (current == null ? 0 : current.row);
+        observations[offset++] = (byte) (current == null ? 0 : current.col);
+        for (int p = 0; p < previewSize; p++) {
+            observations[offset++] = (byte) engine.getPreview(p);
+        }
+    }
+
+    public int getActionCount() {
+        return actionSpace == ActionSpace.PLACEMENTS ? 4 * width : NO_INPUT + 1;
+    }
+
+    public int getEnvCount() {
+        return envs;
+    }
+
+    public int getObservationSize() {
+        return observationSize;
+    }
+
+    public ByteBuffer getObservations() {
+        return observationBuffer;
+    }
+
+    // Same storage as getObservations()
+    public byte[] getObservationArray() {
+        return observations;
+    }
+
+    public float[] getRewards() {
+        return rewards;
+    }
+
+    public boolean[] getDones() {
+        return dones;
+    }
+
+    // Games that ended at the piece limit rather than by topping out
+    public boolean[] getTruncated() {
+        return truncated;
+    }
+
+    // Lines of the game that ended in the last step, for games whose done flag is set
+    public int getFinishedLines(int i) {
+        return finishedLines[i];
+    }
+
+    // Game i's engine, for callers that want more than the observation (e.g. the AI features)
+    public GameEngine getEngine(int i) {
+        return engines[i];
+    }
+
+    public ActionSpace getActionSpace() {
+        return actionSpace;
+    }
+
+    public int getBoardWidth() {
+        return width;
+    }
+
+    public int getBoardHeight() {
+        return height;
+    }
+
+    // Level of games started from now on; sets the score per line
+    public void setLevel(int level) {
+        this.level = Math.max(1, level);
+    }
+
+    public void setMaxPieces(int maxPieces) {
+        this.maxPieces = Math.max(0, maxPieces);
+    }
+
+    public void setGameOverPenalty(float gameOverPenalty) {
+        this.gameOverPenalty = gameOverPenalty;
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    public long getTotalEpisodes() {
+        return totalEpisodes;
+    }
+
+    public double getAverageEpisodeLines() {
+        return totalEpisodes == 0 ? 0 : (double) totalEpisodeLines / totalEpisodes;
+    }
+
+    private class StepTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+
+        StepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_TASK_ENVS) {
+                stepRange(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new StepTask(from, mid), new StepTask(mid, to));
+        }
+    }
+
+    public static void main(String[] args) {
+        int envCount = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+        ActionSpace space = args.length > 2 && args[2].equalsIgnoreCase("placements")
+                ? ActionSpace.PLACEMENTS : ActionSpace.MOVES;
+
+        VectorEnv env = new VectorEnv(envCount, 10, 20, 3, 1, space);
+        int[] actions = new int[envCount];
+        SplittableRandom random = new SplittableRandom(42);
+        long start = System.nanoTime();
+        for (int s = 0; s < steps; s++) {
+            for (int i = 0; i < envCount; i++) {
+                actions[i] = random.nextInt(env.getActionCount());
+            }
+            env.step(actions);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d envs, %d steps (%s), %d games finished, %.2f lines/game in %.2fs (%.0f steps/s)%n",
+                envCount, env.getTotalSteps(), space.name().toLowerCase(), env.getTotalEpisodes(),
+                env.getAverageEpisodeLines(), seconds, env.getTotalSteps() / seconds);
+    }
+}